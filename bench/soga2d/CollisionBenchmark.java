@@ -0,0 +1,84 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the pixel-accurate collision test, both with cached collision
+ * masks and with masks rebuilt after each change.
+ * @author Matúš Sulír
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CollisionBenchmark {
+    @Param({"32", "200"})
+    private int spriteSize;
+    
+    @Param({"0", "30"})
+    private int angle;
+    
+    @Param({"0", "2"})
+    private int subobjectDepth;
+    
+    private GraphicObject first;
+    private GraphicObject second;
+    private CollisionDetector detector;
+    private int step = 0;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphicBoard board = new OffscreenComponent(Scenes.WIDTH, Scenes.HEIGHT).getBoard();
+        first = Scenes.object(spriteSize, angle, subobjectDepth);
+        second = Scenes.object(spriteSize, angle, subobjectDepth);
+        
+        // the circles overlap only in their transparent corners
+        second.moveTo(spriteSize * 7 / 8, spriteSize * 7 / 8);
+        board.addObjects(first, second);
+        detector = new CollisionDetector(first, second);
+    }
+    
+    @Benchmark
+    public boolean objectsCollide() {
+        return detector.objectsCollide();
+    }
+    
+    @Benchmark
+    public boolean objectsCollideAfterChange() {
+        step = (step + 1) % 2;
+        first.setAngle(angle + step);
+        
+        return detector.objectsCollide();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Canvas;
+import java.awt.event.MouseEvent;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the hit-testing done on each mouse click.
+ * @author Matúš Sulír
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HitTestBenchmark {
+    private static final int CLICK_COUNT = 1024;
+    
+    @Param({"100", "1000", "10000"})
+    private int objectCount;
+    
+    @Param({"16", "64"})
+    private int spriteSize;
+    
+    private GraphicBoard board;
+    private MouseEvent[] clicks;
+    private int next = 0;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new OffscreenComponent(Scenes.WIDTH, Scenes.HEIGHT).getBoard();
+        Scenes.populate(board, objectCount, spriteSize, 0, 0, 42);
+        
+        Canvas source = new Canvas();
+        Random random = new Random(7);
+        clicks = new MouseEvent[CLICK_COUNT];
+        
+        for (int i = 0; i < CLICK_COUNT; i++) {
+            clicks[i] = new MouseEvent(source, MouseEvent.MOUSE_CLICKED, 0, 0,
+                    random.nextInt(Scenes.WIDTH), random.nextInt(Scenes.HEIGHT), 1, false);
+        }
+    }
+    
+    @Benchmark
+    public void mouseClicked() {
+        board.mouseClicked(clicks[next]);
+        next = (next + 1) % CLICK_COUNT;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures <code>GraphicBoard.paint()</code> for the whole board and for a
+ * small dirty rectangle.
+ * @author Matúš Sulír
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PaintBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int objectCount;
+    
+    @Param({"16", "64"})
+    private int spriteSize;
+    
+    @Param({"0", "30"})
+    private int angle;
+    
+    @Param({"0", "2"})
+    private int subobjectDepth;
+    
+    private GraphicBoard board;
+    private BufferedImage target;
+    private Graphics2D g;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new OffscreenComponent(Scenes.WIDTH, Scenes.HEIGHT).getBoard();
+        Scenes.populate(board, objectCount, spriteSize, angle, subobjectDepth, 42);
+        target = new BufferedImage(Scenes.WIDTH, Scenes.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g = target.createGraphics();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+    
+    @Benchmark
+    public void paintWholeBoard() {
+        g.setClip(0, 0, Scenes.WIDTH, Scenes.HEIGHT);
+        board.paint(g);
+    }
+    
+    @Benchmark
+    public void paintSmallArea() {
+        g.setClip(Scenes.WIDTH / 2, Scenes.HEIGHT / 2, 64, 64);
+        board.paint(g);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import soga2d.objects.Picture;
+
+/**
+ * Builds reproducible scenes for the benchmarks.
+ * @author Matúš Sulír
+ */
+class Scenes {
+    static final int WIDTH = 1024;
+    static final int HEIGHT = 768;
+    
+    /**
+     * This class contains only static methods.
+     */
+    private Scenes() { }
+    
+    /**
+     * Creates a sprite image - an opaque circle on a transparent background.
+     * @param size the width and height
+     * @return the image
+     */
+    static BufferedImage sprite(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.ORANGE);
+        g.fillOval(0, 0, size, size);
+        g.dispose();
+        
+        return image;
+    }
+    
+    /**
+     * Creates a sprite object, optionally containing nested subobjects.
+     * @param size the width and height
+     * @param angle the rotation angle in degrees
+     * @param subobjectDepth the number of nested subobject levels
+     * @return the graphic object
+     */
+    static GraphicObject object(int size, int angle, int subobjectDepth) {
+        Picture picture = new Picture(sprite(size));
+        
+        if (subobjectDepth > 0 && size >= 4)
+            picture.addSubobject(object(size / 2, 0, subobjectDepth - 1));
+        
+        if (angle != 0)
+            picture.setAngle(angle);
+        
+        return picture;
+    }
+    
+    /**
+     * Fills the board with randomly placed sprites.
+     * @param board the board
+     * @param count the number of objects
+     * @param size the sprite size
+     * @param angle the rotation angle in degrees
+     * @param subobjectDepth the number of nested subobject levels
+     * @param seed the random seed
+     */
+    static void populate(GraphicBoard board, int count, int size, int angle, int subobjectDepth, long seed) {
+        Random random = new Random(seed);
+        board.lock();
+        
+        for (int i = 0; i < count; i++) {
+            GraphicObject object = object(size, angle, subobjectDepth);
+            object.moveTo(random.nextInt(WIDTH - size), random.nextInt(HEIGHT - size));
+            board.addObject(object);
+        }
+        
+        board.unlock();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import soga2d.objects.Text;
+
+/**
+ * Measures <code>Text.setText()</code> as used by frequently updated HUD
+ * labels, e.g. a score counter.
+ * @author Matúš Sulír
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TextBenchmark {
+    @Param({"10", "4096"})
+    private int distinctTexts;
+    
+    @Param({"1", "3"})
+    private int lineCount;
+    
+    @Param({"false", "true"})
+    private boolean rasterCaching;
+    
+    private Text text;
+    private String[] strings;
+    private int next = 0;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphicBoard board = new OffscreenComponent(Scenes.WIDTH, Scenes.HEIGHT).getBoard();
+        text = new Text("Score: 0");
+        text.setRasterCaching(rasterCaching);
+        board.addObject(text);
+        
+        strings = new String[distinctTexts];
+        
+        for (int i = 0; i < strings.length; i++) {
+            StringBuilder builder = new StringBuilder("Score: " + i);
+            
+            for (int line = 1; line < lineCount; line++)
+                builder.append("\nLine ").append(line);
+            
+            strings[i] = builder.toString();
+        }
+    }
+    
+    @Benchmark
+    public void setText() {
+        text.setText(strings[next]);
+        next = (next + 1) % strings.length;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures changes of the z-order of objects.
+ * @author Matúš Sulír
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ZOrderBenchmark {
+    private static final int OPERATION_COUNT = 1024;
+    
+    @Param({"100", "1000", "10000"})
+    private int objectCount;
+    
+    private GraphicObject[] first;
+    private GraphicObject[] second;
+    private int next = 0;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphicBoard board = new OffscreenComponent(Scenes.WIDTH, Scenes.HEIGHT).getBoard();
+        Scenes.populate(board, objectCount, 16, 0, 0, 42);
+        
+        List<GraphicObject> objects = board.getObjectsInArea(new Rectangle(Scenes.WIDTH, Scenes.HEIGHT));
+        Random random = new Random(7);
+        first = new GraphicObject[OPERATION_COUNT];
+        second = new GraphicObject[OPERATION_COUNT];
+        
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            first[i] = objects.get(random.nextInt(objects.size()));
+            second[i] = objects.get(random.nextInt(objects.size()));
+        }
+    }
+    
+    @Benchmark
+    public void bringToForeground() {
+        first[next].bringToForeground();
+        next = (next + 1) % OPERATION_COUNT;
+    }
+    
+    @Benchmark
+    public void sendToBackground() {
+        first[next].sendToBackground();
+        next = (next + 1) % OPERATION_COUNT;
+    }
+    
+    @Benchmark
+    public void moveInFrontOf() {
+        first[next].moveInFrontOf(second[next]);
+        next = (next + 1) % OPERATION_COUNT;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The copy of an image in a format suitable for fast drawing.
+ * 
+ * The image is converted to the format of the graphics configuration it is
+ * drawn on, so Java 2D can copy it without any conversion. Optionally, after
+ * the image was drawn several times without a change, it is also copied to
+ * a <code>VolatileImage</code>, which can reside in the video memory.
+ * 
+ * The copies are shared by all objects drawing the same source image (e.g.
+ * pictures loaded through the image cache or animation frames) and they are
+ * released together with the source image. Only the conversion helper is
+ * public; it is also used by the image cache.
+ * @author Matúš Sulír
+ */
+public final class AcceleratedImage {
+    private static final int STATIC_PAINT_COUNT = 30;
+    private static final Map<BufferedImage, AcceleratedImage> images = new WeakHashMap<BufferedImage, AcceleratedImage>();
+    
+    private GraphicsConfiguration configuration;
+    private BufferedImage compatibleImage;
+    private boolean sourceCompatible;
+    private VolatileImage volatileImage;
+    private int paintCount = 0;
+    
+    /**
+     * Constructs an empty accelerated copy.
+     * 
+     * The conversion itself is done lazily, when the image is drawn. The
+     * source image is not referenced, so it can be used as a weak key.
+     */
+    private AcceleratedImage() {
+    }
+    
+    /**
+     * Returns the shared accelerated copy of the image.
+     * @param source the source image
+     * @return the accelerated copy
+     */
+    static synchronized AcceleratedImage of(BufferedImage source) {
+        AcceleratedImage image = images.get(source);
+        
+        if (image == null) {
+            image = new AcceleratedImage();
+            images.put(source, image);
+        }
+        
+        return image;
+    }
+    
+    /**
+     * Discards the copies of the image, e.g. after the image was modified.
+     * @param source the source image
+     */
+    static void invalidate(BufferedImage source) {
+        AcceleratedImage image;
+        
+        synchronized (AcceleratedImage.class) {
+            image = images.remove(source);
+        }
+        
+        if (image != null)
+            image.flush();
+    }
+    
+    /**
+     * Draws the image.
+     * @param g the graphics to draw on
+     * @param source the source image this copy belongs to
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param useVolatile true if a volatile image can be used
+     */
+    synchronized void draw(Graphics2D g, BufferedImage source, int x, int y, boolean useVolatile) {
+        GraphicsConfiguration currentConfiguration = g.getDeviceConfiguration();
+        
+        if (currentConfiguration != configuration) {
+            configuration = currentConfiguration;
+            compatibleImage = null;
+            sourceCompatible = false;
+            flush();
+        }
+        
+        if (useVolatile && ++paintCount > STATIC_PAINT_COUNT && drawVolatile(g, source, x, y))
+            return;
+        
+        if (compatibleImage == null && !sourceCompatible) {
+            BufferedImage converted = toCompatible(source, configuration);
+            
+            // keeping the source itself would prevent it from being released
+            if (converted == source)
+                sourceCompatible = true;
+            else
+                compatibleImage = converted;
+        }
+        
+        g.drawImage(sourceCompatible ? source : compatibleImage, x, y, null);
+    }
+    
+    /**
+     * Releases the volatile image, if any.
+     */
+    synchronized void flush() {
+        if (volatileImage != null) {
+            volatileImage.flush();
+            volatileImage = null;
+        }
+    }
+    
+    /**
+     * Returns the image in the format of the graphics configuration.
+     * @param image the source image
+     * @param configuration the graphics configuration
+     * @return the source image itself if it is already compatible, a
+     * converted copy otherwise
+     */
+    public static BufferedImage toCompatible(BufferedImage image, GraphicsConfiguration configuration) {
+        if (image.getColorModel().equals(configuration.getColorModel(image.getTransparency())))
+            return image;
+        
+        BufferedImage result = configuration.createCompatibleImage(image.getWidth(), image.getHeight(), image.getTransparency());
+        Graphics2D g = result.createGraphics();
+        
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        
+        return result;
+    }
+    
+    /**
+     * Draws the image using the volatile copy, restoring it if needed.
+     * @param g the graphics to draw on
+     * @param source the source image
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return true if the volatile image was drawn successfully, false if
+     * its contents were lost
+     */
+    private boolean drawVolatile(Graphics2D g, BufferedImage source, int x, int y) {
+        if (volatileImage == null) {
+            volatileImage = configuration.createCompatibleVolatileImage(source.getWidth(), source.getHeight(), source.getTransparency());
+            
+            if (volatileImage == null)
+                return false;
+            
+            renderVolatile(source);
+        }
+        
+        int status = volatileImage.validate(configuration);
+        
+        if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+            flush();
+            return false;
+        } else if (status == VolatileImage.IMAGE_RESTORED) {
+            renderVolatile(source);
+        }
+        
+        g.drawImage(volatileImage, x, y, null);
+        
+        return !volatileImage.contentsLost();
+    }
+    
+    /**
+     * Copies the source image into the volatile image.
+     * @param source the source image
+     */
+    private void renderVolatile(BufferedImage source) {
+        Graphics2D g = volatileImage.createGraphics();
+        
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import soga2d.events.FrameListener;
+
+/**
+ * The animation clock drives any number of animated graphic objects from one
+ * thread.
+ * 
+ * The clock ticks periodically and on each tick it advances all animations
+ * whose next frame is due. The frames of objects located on one board are
+ * shown in one transaction (the board is locked meanwhile), so all their
+ * changes are repainted at once and each detector is notified only once.
+ * 
+ * The board is not thread-safe, so unless its change queue is enabled, the
+ * frame listeners of its objects are called on the board's rendering thread
+ * (the AWT event dispatch thread for Swing components) instead of the clock
+ * thread.
+ * @author Matúš Sulír
+ */
+public class AnimationClock {
+    private static AnimationClock defaultClock;
+    
+    private int tickInterval;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private List<Entry> entries = new CopyOnWriteArrayList<Entry>();
+    
+    /**
+     * Returns the clock shared by all animations which do not specify their
+     * own one.
+     * 
+     * It ticks every 10 milliseconds in a daemon thread.
+     * @return the default clock
+     */
+    public static synchronized AnimationClock getDefault() {
+        if (defaultClock == null)
+            defaultClock = new AnimationClock(10);
+        
+        return defaultClock;
+    }
+    
+    /**
+     * Constructs a clock running in its own daemon thread.
+     * @param tickInterval the time between two ticks, in milliseconds
+     */
+    public AnimationClock(int tickInterval) {
+        this(tickInterval, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Soga2D animation clock");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+    
+    /**
+     * Constructs a clock running on the given executor.
+     * @param tickInterval the time between two ticks, in milliseconds
+     * @param executor the executor used to schedule the ticks
+     */
+    public AnimationClock(int tickInterval, ScheduledExecutorService executor) {
+        if (tickInterval <= 0)
+            throw new IllegalArgumentException("The tick interval must be positive");
+        
+        this.tickInterval = tickInterval;
+        this.executor = executor;
+    }
+    
+    /**
+     * Starts animating the object.
+     * 
+     * The first frame is shown on the next tick. If the object is already
+     * animated by this clock, its interval and listener are replaced.
+     * @param object the animated object
+     * @param interval the time between two frames, in milliseconds
+     * @param listener the listener showing the frames
+     */
+    public void add(GraphicObject object, int interval, FrameListener listener) {
+        remove(object);
+        entries.add(new Entry(object, interval, listener));
+        
+        synchronized (this) {
+            if (task == null) {
+                task = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        tick();
+                    }
+                }, 0, tickInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    /**
+     * Stops animating the object.
+     * @param object the animated object
+     */
+    public void remove(GraphicObject object) {
+        for (Entry entry : entries) {
+            if (entry.object == object) {
+                entry.removed = true;
+                entries.remove(entry);
+            }
+        }
+        
+        synchronized (this) {
+            if (entries.isEmpty() && task != null) {
+                task.cancel(false);
+                task = null;
+            }
+        }
+    }
+    
+    /**
+     * Advances all animations whose next frame is due.
+     * 
+     * The frames of objects located on a board, directly or as subobjects,
+     * are shown on the board's rendering thread, unless the board's change
+     * queue is enabled.
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        List<Entry> unboundEntries = new ArrayList<Entry>();
+        Map<GraphicBoard, List<Entry>> boardEntries = new IdentityHashMap<GraphicBoard, List<Entry>>();
+        
+        for (Entry entry : entries) {
+            if (now - entry.nextFrame < 0)
+                continue;
+            
+            GraphicBoard board = entry.object.getRootBoard();
+            
+            if (board == null) {
+                unboundEntries.add(entry);
+            } else {
+                List<Entry> list = boardEntries.get(board);
+                
+                if (list == null) {
+                    list = new ArrayList<Entry>();
+                    boardEntries.put(board, list);
+                }
+                
+                list.add(entry);
+            }
+            
+            if (board != null && board.getEnabledMetrics() != null)
+                board.getEnabledMetrics().recordAnimationFrame(now - entry.nextFrame);
+            
+            entry.advance(now);
+        }
+        
+        showFrames(unboundEntries);
+        
+        for (Map.Entry<GraphicBoard, List<Entry>> boardEntry : boardEntries.entrySet()) {
+            Runnable frames = new BoardFrames(boardEntry.getKey(), boardEntry.getValue());
+            
+            if (boardEntry.getKey().isChangeQueueEnabled())
+                frames.run();
+            else
+                boardEntry.getKey().enqueueChange(frames);
+        }
+    }
+    
+    /**
+     * Notifies the listeners of the animations that their next frame should
+     * be shown.
+     * @param dueEntries the animations whose frame is due
+     */
+    private static void showFrames(List<Entry> dueEntries) {
+        for (Entry entry : dueEntries) {
+            // the frame could have been queued before the animation was removed
+            if (entry.removed)
+                continue;
+            
+            try {
+                entry.listener.onFrame();
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+    
+    /**
+     * The frames of one board shown in one transaction, so all their changes
+     * are repainted at once and each detector is notified only once.
+     */
+    private static class BoardFrames implements Runnable {
+        private GraphicBoard board;
+        private List<Entry> dueEntries;
+        
+        BoardFrames(GraphicBoard board, List<Entry> dueEntries) {
+            this.board = board;
+            this.dueEntries = dueEntries;
+        }
+        
+        @Override
+        public void run() {
+            board.lock();
+            
+            try {
+                showFrames(dueEntries);
+            } finally {
+                board.unlock();
+            }
+        }
+    }
+    
+    /**
+     * One animated object and its schedule.
+     */
+    private static class Entry {
+        private GraphicObject object;
+        private long interval;
+        private FrameListener listener;
+        private long nextFrame;
+        private volatile boolean removed = false;
+        
+        Entry(GraphicObject object, int interval, FrameListener listener) {
+            this.object = object;
+            this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+            this.listener = listener;
+            this.nextFrame = System.nanoTime();
+        }
+        
+        /**
+         * Schedules the next frame.
+         * 
+         * If the animation is late by more than one frame, the missed frames
+         * are skipped.
+         * @param now the current time in nanoseconds
+         */
+        void advance(long now) {
+            nextFrame += interval;
+            
+            if (now - nextFrame >= interval)
+                nextFrame = now + interval;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+
+/**
+ * Forwards the mouse and key events of an AWT component to a graphic board.
+ * @author Matúš Sulír
+ */
+class BoardInput {
+    /**
+     * This class contains only static methods.
+     */
+    private BoardInput() { }
+    
+    /**
+     * Registers the listeners which forward all relevant events of the
+     * component to the board.
+     * @param component the AWT or Swing component
+     * @param board the graphic board
+     */
+    static void forward(Component component, final GraphicBoard board) {
+        component.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent event) {
+                board.mouseClicked(event);
+            }
+            
+            @Override
+            public void mousePressed(MouseEvent event) {
+                board.mousePressed(event);
+            }
+        });
+        
+        component.addMouseMotionListener(new MouseMotionAdapter() {
+            @Override
+            public void mouseDragged(MouseEvent event) {
+                board.mouseDragged(event);
+            }
+        });
+        
+        component.addKeyListener(new KeyListener() {
+            @Override
+            public void keyPressed(KeyEvent event) {
+                board.keyEvent(event);
+            }
+
+            @Override
+            public void keyTyped(KeyEvent event) {
+                board.keyEvent(event);
+            }
+
+            @Override
+            public void keyReleased(KeyEvent event) {
+                board.keyEvent(event);
+            }
+        });
+    }
+}
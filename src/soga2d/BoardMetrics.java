@@ -0,0 +1,311 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import soga2d.events.MetricsListener;
+
+/**
+ * The runtime performance metrics of one graphic board.
+ * 
+ * Nothing is measured until the metrics are enabled. The values can be read
+ * directly, through a JMX MBean or, for each repaint, by a listener.
+ * @author Matúš Sulír
+ * @see GraphicBoard#getMetrics()
+ */
+public class BoardMetrics implements BoardMetricsMBean {
+    private volatile boolean enabled = false;
+    private volatile MetricsListener listener;
+    private ObjectName mbeanName;
+    
+    private Histogram paintTimes = new Histogram();
+    private AtomicLong drawnObjects = new AtomicLong();
+    private AtomicLong culledObjects = new AtomicLong();
+    private AtomicLong repaintRequests = new AtomicLong();
+    private AtomicLong repaintedPixels = new AtomicLong();
+    private AtomicLong detectorNotifications = new AtomicLong();
+    private Histogram collisionTimes = new Histogram();
+    private Histogram animationLags = new Histogram();
+    
+    /**
+     * Constructs disabled metrics.
+     */
+    BoardMetrics() { }
+    
+    /**
+     * Enables or disables the measuring.
+     * @param enabled true to enable the metrics, false to disable them
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Finds out whether the metrics are being measured.
+     * @return true if the metrics are enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Registers a listener notified after each repaint (can be only one).
+     * @param listener the listener
+     */
+    public void setListener(MetricsListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Registers these metrics in the platform MBean server under the name
+     * <code>soga2d:type=BoardMetrics,name=<em>name</em></code>.
+     * @param name the board name
+     * @throws JMException when the MBean could not be registered
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        
+        ObjectName objectName = new ObjectName("soga2d", "type", "BoardMetrics");
+        objectName = new ObjectName(objectName.getCanonicalName() + ",name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        mbeanName = objectName;
+    }
+    
+    /**
+     * Removes these metrics from the platform MBean server, if registered.
+     * @throws JMException when the MBean could not be unregistered
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mbeanName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            mbeanName = null;
+        }
+    }
+    
+    @Override
+    public long getPaintCount() {
+        return paintTimes.getCount();
+    }
+    
+    @Override
+    public double getMeanPaintTime() {
+        return paintTimes.getMean();
+    }
+    
+    @Override
+    public long getPaintTime95thPercentile() {
+        return paintTimes.getPercentile(0.95);
+    }
+    
+    @Override
+    public long getMaxPaintTime() {
+        return paintTimes.getMax();
+    }
+    
+    @Override
+    public long getDrawnObjectCount() {
+        return drawnObjects.get();
+    }
+    
+    @Override
+    public long getCulledObjectCount() {
+        return culledObjects.get();
+    }
+    
+    @Override
+    public long getRepaintRequestCount() {
+        return repaintRequests.get();
+    }
+    
+    @Override
+    public long getRepaintedPixelCount() {
+        return repaintedPixels.get();
+    }
+    
+    @Override
+    public long getDetectorNotificationCount() {
+        return detectorNotifications.get();
+    }
+    
+    @Override
+    public long getCollisionTestCount() {
+        return collisionTimes.getCount();
+    }
+    
+    @Override
+    public double getMeanCollisionTestTime() {
+        return collisionTimes.getMean();
+    }
+    
+    @Override
+    public long getAnimationFrameCount() {
+        return animationLags.getCount();
+    }
+    
+    @Override
+    public double getMeanAnimationLag() {
+        return animationLags.getMean();
+    }
+    
+    @Override
+    public long getMaxAnimationLag() {
+        return animationLags.getMax();
+    }
+    
+    @Override
+    public void reset() {
+        paintTimes.reset();
+        drawnObjects.set(0);
+        culledObjects.set(0);
+        repaintRequests.set(0);
+        repaintedPixels.set(0);
+        detectorNotifications.set(0);
+        collisionTimes.reset();
+        animationLags.reset();
+    }
+    
+    /**
+     * Records one board repaint.
+     * @param duration the duration in nanoseconds
+     * @param drawn the number of objects drawn
+     * @param culled the number of objects skipped
+     */
+    void recordPaint(long duration, int drawn, int culled) {
+        paintTimes.record(duration);
+        drawnObjects.addAndGet(drawn);
+        culledObjects.addAndGet(culled);
+        
+        MetricsListener currentListener = listener;
+        if (currentListener != null)
+            currentListener.onPaint(duration, drawn, culled);
+    }
+    
+    /**
+     * Records a request to repaint an area.
+     * @param pixels the number of pixels in the area
+     */
+    void recordRepaint(long pixels) {
+        repaintRequests.incrementAndGet();
+        repaintedPixels.addAndGet(pixels);
+    }
+    
+    /**
+     * Records notifications sent to detectors.
+     * @param count the number of detectors notified
+     */
+    void recordDetectorNotifications(int count) {
+        detectorNotifications.addAndGet(count);
+    }
+    
+    /**
+     * Records one pixel-accurate collision test.
+     * @param duration the duration in nanoseconds
+     */
+    void recordCollisionTest(long duration) {
+        collisionTimes.record(duration);
+    }
+    
+    /**
+     * Records one animation frame.
+     * @param lag the delay after the planned time in nanoseconds
+     */
+    void recordAnimationFrame(long lag) {
+        animationLags.record(lag);
+    }
+    
+    /**
+     * The histogram of durations with buckets growing by powers of two
+     * microseconds.
+     */
+    private static class Histogram {
+        private static final int BUCKETS = 40;
+        
+        private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private AtomicLong count = new AtomicLong();
+        private AtomicLong sum = new AtomicLong();
+        private AtomicLong max = new AtomicLong();
+        
+        /**
+         * Records a value.
+         * @param nanos the duration in nanoseconds
+         */
+        void record(long nanos) {
+            long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(micros);
+            
+            long currentMax;
+            while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) { }
+        }
+        
+        long getCount() {
+            return count.get();
+        }
+        
+        double getMean() {
+            long currentCount = count.get();
+            return (currentCount == 0) ? 0 : (double) sum.get() / currentCount;
+        }
+        
+        long getMax() {
+            return max.get();
+        }
+        
+        /**
+         * Returns the upper bound of the bucket containing the percentile.
+         * @param fraction the percentile as a number between 0 and 1
+         * @return the value in microseconds
+         */
+        long getPercentile(double fraction) {
+            long threshold = (long) Math.ceil(count.get() * fraction);
+            long seen = 0;
+            
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                
+                if (seen >= threshold && seen > 0)
+                    return Math.min((1L << i) - 1, max.get());
+            }
+            
+            return max.get();
+        }
+        
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++)
+                buckets.set(i, 0);
+            
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+}
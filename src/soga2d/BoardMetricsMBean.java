@@ -0,0 +1,126 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+/**
+ * The JMX management interface of the board metrics.
+ * 
+ * All times are in microseconds.
+ * @author Matúš Sulír
+ * @see BoardMetrics#registerMBean(String)
+ */
+public interface BoardMetricsMBean {
+    /**
+     * Returns the number of board repaints.
+     * @return the paint count
+     */
+    long getPaintCount();
+    
+    /**
+     * Returns the mean duration of a board repaint.
+     * @return the mean time
+     */
+    double getMeanPaintTime();
+    
+    /**
+     * Returns the duration not exceeded by 95 % of the board repaints
+     * (approximated by a power of two).
+     * @return the 95th percentile of the paint time
+     */
+    long getPaintTime95thPercentile();
+    
+    /**
+     * Returns the longest duration of a board repaint.
+     * @return the maximum time
+     */
+    long getMaxPaintTime();
+    
+    /**
+     * Returns the total number of objects drawn.
+     * @return the number of objects
+     */
+    long getDrawnObjectCount();
+    
+    /**
+     * Returns the total number of objects skipped because they were outside
+     * the painted area.
+     * @return the number of objects
+     */
+    long getCulledObjectCount();
+    
+    /**
+     * Returns the number of requests to repaint an area of the board.
+     * @return the number of requests
+     */
+    long getRepaintRequestCount();
+    
+    /**
+     * Returns the total number of pixels requested to be repainted.
+     * @return the number of pixels
+     */
+    long getRepaintedPixelCount();
+    
+    /**
+     * Returns the number of notifications sent to detectors.
+     * @return the number of notifications
+     */
+    long getDetectorNotificationCount();
+    
+    /**
+     * Returns the number of pixel-accurate collision tests.
+     * @return the number of tests
+     */
+    long getCollisionTestCount();
+    
+    /**
+     * Returns the mean duration of a pixel-accurate collision test.
+     * @return the mean time
+     */
+    double getMeanCollisionTestTime();
+    
+    /**
+     * Returns the number of animation frames shown.
+     * @return the number of frames
+     */
+    long getAnimationFrameCount();
+    
+    /**
+     * Returns the mean delay between the planned and the actual time of an
+     * animation frame.
+     * @return the mean lag
+     */
+    double getMeanAnimationLag();
+    
+    /**
+     * Returns the longest delay between the planned and the actual time of
+     * an animation frame.
+     * @return the maximum lag
+     */
+    long getMaxAnimationLag();
+    
+    /**
+     * Resets all counters and histograms.
+     */
+    void reset();
+}
@@ -53,28 +53,39 @@ public class CollisionDetector implements Detector {
      * Two objects are in a collision if at least one non-transparent pixel of
      * one object has the same coordinates on the board as at least one
      * non-transparent pixel of the second object.
-     * @param object the second object
      * @return true if the objecs collide, false otherwise
      */
     public boolean objectsCollide() {
-        Rectangle intersection = first.getRectangle().intersection(second.getRectangle());
+        return objectsCollide(first, second);
+    }
+    
+    /**
+     * Finds out whether two objects are in a pixel-accurate collision.
+     * @param first the first object
+     * @param second the second object
+     * @return true if the objecs collide, false otherwise
+     * @see #objectsCollide()
+     */
+    static boolean objectsCollide(GraphicObject first, GraphicObject second) {
+        if (first.getX() >= second.getX() + second.getWidth() || second.getX() >= first.getX() + first.getWidth()
+                || first.getY() >= second.getY() + second.getHeight() || second.getY() >= first.getY() + first.getHeight())
+            return false;
+        
+        GraphicBoard board = (first.getBoard() != null) ? first.getBoard() : second.getBoard();
+        BoardMetrics metrics = (board != null) ? board.getEnabledMetrics() : null;
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        
+        Rectangle common = first.getRectangle().intersection(second.getRectangle());
+        Rectangle firstArea = new Rectangle(common.x - first.getX(), common.y - first.getY(), common.width, common.height);
+        Rectangle secondArea = new Rectangle(common.x - second.getX(), common.y - second.getY(), common.width, common.height);
+        
+        boolean result = CollisionMask.overlap(first.getCollisionMask(firstArea), first.getX(), first.getY(),
+                second.getCollisionMask(secondArea), second.getX(), second.getY());
         
-        if (!intersection.isEmpty()) {
-            for (int x = (int) intersection.getX(); x < intersection.getMaxX(); x++) {
-                for (int y = (int) intersection.getY(); y < intersection.getMaxY(); y++) {
-                    int firstPixel = getARGBAtBoardCoordinate(first, x, y);
-                    
-                    if (!isPixelTransparent(firstPixel)) {
-                        int secondPixel = getARGBAtBoardCoordinate(second, x, y);
-                    
-                        if (!isPixelTransparent(secondPixel))
-                            return true;
-                    }
-                }
-            }
-        }
+        if (metrics != null)
+            metrics.recordCollisionTest(System.nanoTime() - start);
         
-        return false;
+        return result;
     }
 
     /**
@@ -100,27 +111,4 @@ public class CollisionDetector implements Detector {
         if (listener != null && objectsCollide())
             listener.onCollision();
     }
-    
-    /**
-     * Returns an integer representation of a pixel at given location in ARGB
-     * color model.
-     * 
-     * Also translates the given board coordinates into the object coordinates as needed.
-     * @param object the object
-     * @param x the x coordinate on the graphic board
-     * @param y the y coordinate on the graphic board
-     * @return the ARGB representation of the pixel
-     */
-    private int getARGBAtBoardCoordinate(GraphicObject object, int x, int y) {
-        return object.getImage().getRGB(x - object.getX(), y - object.getY());
-    }
-    
-    /**
-     * Finds out whether the pixel is 100% transparent.
-     * @param pixel the ARGB pixel
-     * @return true if the pixel is transparent, false otherwise
-     */
-    private boolean isPixelTransparent(int pixel) {
-        return ((pixel >> 24) & 0xFF) == 0;
-    }
 }
@@ -0,0 +1,222 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * The collision mask is a bitmap telling which pixels of an image (or of its
+ * part) are not fully transparent.
+ * 
+ * Each row is packed into an array of 64-bit words, so two masks can be
+ * compared 64 pixels at a time.
+ * @author Matúš Sulír
+ */
+class CollisionMask {
+    private int offsetX;
+    private int offsetY;
+    private int width;
+    private int height;
+    private int wordsPerRow;
+    private long[] bits;
+    
+    /**
+     * Builds the mask from an image.
+     * @param image the image
+     */
+    CollisionMask(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * height];
+        
+        int[] row = new int[width];
+        
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int base = y * wordsPerRow;
+            
+            for (int x = 0; x < width; x++) {
+                if ((row[x] >>> 24) != 0)
+                    bits[base + (x >>> 6)] |= 1L << (x & 63);
+            }
+        }
+    }
+    
+    /**
+     * Builds the mask of a part of a procedural object from its opacity
+     * test.
+     * 
+     * The object is rotated around its center the same way as images are,
+     * without any raster being created. Only the pixels of the given area
+     * are tested, so the cost does not depend on the size of the object.
+     * @param object the procedural object
+     * @param angle the rotation angle in degrees
+     * @param area the area relative to the object's top-left corner
+     */
+    CollisionMask(GraphicObject object, int angle, Rectangle area) {
+        offsetX = area.x;
+        offsetY = area.y;
+        width = area.width;
+        height = area.height;
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * height];
+        
+        int objectWidth = object.getWidth();
+        int objectHeight = object.getHeight();
+        boolean rotated = (angle % 360 != 0);
+        double cos = Math.cos(Math.toRadians(-angle));
+        double sin = Math.sin(Math.toRadians(-angle));
+        int centerX = objectWidth / 2;
+        int centerY = objectHeight / 2;
+        
+        for (int y = 0; y < height; y++) {
+            int base = y * wordsPerRow;
+            
+            if (!rotated) {
+                fillRuns(object, base, y);
+                continue;
+            }
+            
+            for (int x = 0; x < width; x++) {
+                int sourceX = offsetX + x;
+                int sourceY = offsetY + y;
+                
+                double deltaX = sourceX + 0.5 - centerX;
+                double deltaY = sourceY + 0.5 - centerY;
+                sourceX = (int) Math.floor(centerX + deltaX * cos - deltaY * sin);
+                sourceY = (int) Math.floor(centerY + deltaX * sin + deltaY * cos);
+                
+                if (sourceX < 0 || sourceY < 0 || sourceX >= objectWidth || sourceY >= objectHeight)
+                    continue;
+                
+                
+                if (object.isOpaque(sourceX, sourceY))
+                    bits[base + (x >>> 6)] |= 1L << (x & 63);
+            }
+        }
+    }
+    
+    /**
+     * Finds out whether two masks placed on the board have at least one
+     * common opaque pixel.
+     * @param first the first mask
+     * @param firstX the x coordinate of the first mask's object on the board
+     * @param firstY the y coordinate of the first mask's object on the board
+     * @param second the second mask
+     * @param secondX the x coordinate of the second mask's object on the board
+     * @param secondY the y coordinate of the second mask's object on the board
+     * @return true if the masks overlap, false otherwise
+     */
+    static boolean overlap(CollisionMask first, int firstX, int firstY,
+            CollisionMask second, int secondX, int secondY) {
+        firstX += first.offsetX;
+        firstY += first.offsetY;
+        secondX += second.offsetX;
+        secondY += second.offsetY;
+        
+        int minX = Math.max(firstX, secondX);
+        int maxX = Math.min(firstX + first.width, secondX + second.width);
+        int minY = Math.max(firstY, secondY);
+        int maxY = Math.min(firstY + first.height, secondY + second.height);
+        
+        for (int y = minY; y < maxY; y++) {
+            int firstRow = y - firstY;
+            int secondRow = y - secondY;
+            
+            for (int x = minX; x < maxX; x += 64) {
+                long common = first.word(firstRow, x - firstX) & second.word(secondRow, x - secondX);
+                int length = maxX - x;
+                
+                if (length < 64)
+                    common &= (1L << length) - 1;
+                
+                if (common != 0)
+                    return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Fills one row of the mask of a procedural object which is not rotated,
+     * one run of equally opaque pixels at a time.
+     * @param object the procedural object
+     * @param base the index of the row's first word
+     * @param y the row number in the mask
+     */
+    private void fillRuns(GraphicObject object, int base, int y) {
+        int sourceY = offsetY + y;
+        int endX = offsetX + width;
+        
+        for (int sourceX = offsetX; sourceX < endX; ) {
+            int runEnd = Math.min(Math.max(object.getOpacityRunEnd(sourceX, sourceY, endX), sourceX + 1), endX);
+            
+            if (object.isOpaque(sourceX, sourceY))
+                setBits(base, sourceX - offsetX, runEnd - offsetX);
+            
+            sourceX = runEnd;
+        }
+    }
+    
+    /**
+     * Sets a range of bits of a row, whole words at a time.
+     * @param base the index of the row's first word
+     * @param from the first bit to set
+     * @param to the bit after the last one to set
+     */
+    private void setBits(int base, int from, int to) {
+        while (from < to) {
+            int index = from >>> 6;
+            int shift = from & 63;
+            int count = Math.min(64 - shift, to - from);
+            long word = (count == 64) ? -1L : ((1L << count) - 1) << shift;
+            
+            bits[base + index] |= word;
+            from += count;
+        }
+    }
+    
+    /**
+     * Returns 64 consecutive bits of a row, starting at any bit.
+     * 
+     * Bits after the end of the row are zero.
+     * @param row the row number
+     * @param start the index of the first bit (the x coordinate)
+     * @return the bits, the first one being the least significant
+     */
+    private long word(int row, int start) {
+        int index = start >>> 6;
+        int shift = start & 63;
+        int base = row * wordsPerRow;
+        long result = bits[base + index] >>> shift;
+        
+        if (shift != 0 && index + 1 < wordsPerRow)
+            result |= bits[base + index + 1] << (64 - shift);
+        
+        return result;
+    }
+}
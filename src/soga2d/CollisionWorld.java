@@ -0,0 +1,167 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import soga2d.events.CollisionListener;
+
+/**
+ * The collision world detects collisions between any objects added to it.
+ * 
+ * Unlike the <code>CollisionDetector</code>, which watches one pair of
+ * objects, the world needs only one registration per object. When an object
+ * changes, a spatial index is used to find the objects whose rectangles
+ * overlap it (the broad phase) and only these are tested for a pixel-accurate
+ * collision (the narrow phase).
+ * 
+ * Each graphic board has its own collision world.
+ * @author Matúš Sulír
+ * @see GraphicBoard#getCollisionWorld()
+ */
+public class CollisionWorld {
+    private SpatialIndex index = new GridIndex();
+    private Map<GraphicObject, Member> members = new IdentityHashMap<GraphicObject, Member>();
+    
+    /**
+     * Constructs an empty collision world.
+     */
+    CollisionWorld() { }
+    
+    /**
+     * Adds an object which does not need to be notified about collisions.
+     * 
+     * Other objects can still collide with it, e.g. a wall.
+     * @param object the graphic object
+     */
+    public void addObject(GraphicObject object) {
+        addObject(object, null);
+    }
+    
+    /**
+     * Adds an object to the world.
+     * 
+     * The listener is notified after each change of this object or any other
+     * object in the world if this object is in a collision with at least one
+     * other object. Adding an already present object replaces its listener.
+     * @param object the graphic object
+     * @param listener the collision listener (can be null)
+     */
+    public void addObject(GraphicObject object, CollisionListener listener) {
+        Member member = members.get(object);
+        
+        if (member == null) {
+            member = new Member(object);
+            members.put(object, member);
+            object.addDetector(member);
+        }
+        
+        member.listener = listener;
+        member.objectChanged();
+    }
+    
+    /**
+     * Removes the object from the world.
+     * @param object the graphic object
+     */
+    public void removeObject(GraphicObject object) {
+        Member member = members.remove(object);
+        
+        if (member != null) {
+            object.removeDetector(member);
+            index.remove(object);
+        }
+    }
+    
+    /**
+     * Removes all objects from the world.
+     */
+    public void clear() {
+        for (Member member : members.values())
+            member.object.removeDetector(member);
+        
+        members.clear();
+        index.clear();
+    }
+    
+    /**
+     * Returns all objects in the world which are currently in a collision
+     * with the given object.
+     * @param object the graphic object (does not need to be in the world)
+     * @return the list of colliding objects
+     */
+    public List<GraphicObject> getCollidingObjects(GraphicObject object) {
+        List<GraphicObject> result = new ArrayList<GraphicObject>();
+        
+        for (GraphicObject candidate : index.objectsIn(object.getRectangle())) {
+            if (candidate != object && CollisionDetector.objectsCollide(object, candidate))
+                result.add(candidate);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Updates the index after a member changed and notifies the listeners of
+     * all objects involved in a collision.
+     * @param member the changed member
+     */
+    private void memberChanged(Member member) {
+        index.update(member.object, member.object.getRectangle());
+        
+        boolean collides = false;
+        
+        for (GraphicObject other : getCollidingObjects(member.object)) {
+            collides = true;
+            
+            Member otherMember = members.get(other);
+            if (otherMember != null && otherMember.listener != null)
+                otherMember.listener.onCollision();
+        }
+        
+        if (collides && member.listener != null)
+            member.listener.onCollision();
+    }
+    
+    /**
+     * The detector registered on each object in the world.
+     */
+    private class Member implements Detector {
+        private GraphicObject object;
+        private CollisionListener listener;
+        
+        Member(GraphicObject object) {
+            this.object = object;
+        }
+        
+        @Override
+        public void objectChanged() {
+            // a notification deferred by a locked board can come after removal
+            if (members.get(object) == this)
+                memberChanged(this);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The set of areas which need to be repainted.
+ * 
+ * The region is kept as a small list of disjoint rectangles. A new rectangle
+ * is merged with an existing one only if they overlap or if their bounding
+ * box is not larger than both of them together. When there are too many
+ * rectangles, the pair whose merging adds the least area is merged.
+ * @author Matúš Sulír
+ */
+class DirtyRegion {
+    private static final int MAX_RECTANGLES = 8;
+    
+    private List<Rectangle> rectangles = new ArrayList<Rectangle>();
+    
+    /**
+     * Adds an area to the region.
+     * @param area the rectangle to add (empty rectangles are ignored)
+     */
+    void add(Rectangle area) {
+        if (area.isEmpty())
+            return;
+        
+        Rectangle merged = new Rectangle(area);
+        boolean changed = true;
+        
+        while (changed) {
+            changed = false;
+            
+            for (int i = 0; i < rectangles.size(); i++) {
+                Rectangle rectangle = rectangles.get(i);
+                
+                if (rectangle.intersects(merged) || area(rectangle.union(merged)) <= area(rectangle) + area(merged)) {
+                    merged = merged.union(rectangle);
+                    rectangles.remove(i);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        
+        rectangles.add(merged);
+        
+        if (rectangles.size() > MAX_RECTANGLES)
+            mergeCheapestPair();
+    }
+    
+    /**
+     * Finds out whether the region contains no area.
+     * @return true if the region is empty, false otherwise
+     */
+    boolean isEmpty() {
+        return rectangles.isEmpty();
+    }
+    
+    /**
+     * Returns all rectangles of the region and clears it.
+     * @return the list of disjoint rectangles
+     */
+    List<Rectangle> flush() {
+        List<Rectangle> result = rectangles;
+        rectangles = new ArrayList<Rectangle>();
+        
+        return result;
+    }
+    
+    /**
+     * Merges the two rectangles whose bounding box wastes the least area and
+     * then any rectangles the merged one started to overlap.
+     */
+    private void mergeCheapestPair() {
+        int bestFirst = 0;
+        int bestSecond = 1;
+        long bestCost = Long.MAX_VALUE;
+        
+        for (int i = 0; i < rectangles.size(); i++) {
+            for (int j = i + 1; j < rectangles.size(); j++) {
+                Rectangle first = rectangles.get(i);
+                Rectangle second = rectangles.get(j);
+                long cost = area(first.union(second)) - area(first) - area(second);
+                
+                if (cost < bestCost) {
+                    bestFirst = i;
+                    bestSecond = j;
+                    bestCost = cost;
+                }
+            }
+        }
+        
+        Rectangle merged = rectangles.get(bestFirst).union(rectangles.get(bestSecond));
+        rectangles.remove(bestSecond);
+        rectangles.remove(bestFirst);
+        add(merged);
+    }
+    
+    /**
+     * Returns the area of the rectangle.
+     * @param rectangle the rectangle
+     * @return the number of pixels
+     */
+    private static long area(Rectangle rectangle) {
+        return (long) rectangle.width * rectangle.height;
+    }
+}
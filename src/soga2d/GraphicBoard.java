@@ -23,29 +23,61 @@
  */
 package soga2d;
 
+import java.awt.EventQueue;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.JComponent;
 import soga2d.events.KeyListener;
 
 /**
  * The container of all graphic objects.
  * 
+ * The objects are organized into layers. Initially, there is only the
+ * default layer; other layers can be added in front of or behind it.
+ * <p>
+ * Objects are located in the world coordinates. The camera decides which
+ * part of the world is displayed and how much it is zoomed; by default, the
+ * world coordinates are equal to the component coordinates.
  * @author Matúš Sulír
  */
 public class GraphicBoard {
     private GraphicComponent component;
-    private List<GraphicObject> items = new ArrayList<GraphicObject>();
-    private boolean locked = false;
+    private final Layer defaultLayer = new Layer("default");
+    private final List<Layer> layers = new CopyOnWriteArrayList<Layer>(Collections.singletonList(defaultLayer));
+    private final Map<GraphicObject, Layer> objectLayers = new IdentityHashMap<GraphicObject, Layer>();
+    private SpatialIndex index = new GridIndex();
+    private CollisionWorld collisionWorld;
+    private ProximityWorld proximityWorld;
+    private int lockDepth = 0;
+    private Set<Detector> pendingDetectors = new LinkedHashSet<Detector>();
     private KeyListener keyListener;
-    private Rectangle dirtyArea = new Rectangle();
+    private DirtyRegion dirtyRegion = new DirtyRegion();
     private GraphicObject draggedItem;
     private Point draggedPoint;
+    private boolean imageAcceleration = false;
+    private boolean volatileImages = false;
+    private volatile boolean changeQueueEnabled = false;
+    private volatile Thread renderingThread;
+    private final Queue<Runnable> pendingChanges = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean changesScheduled = new AtomicBoolean(false);
+    private final BoardMetrics metrics = new BoardMetrics();
+    private volatile Viewport viewport = new Viewport(0, 0, 1);
     
     /**
      * Constructs a graphic board bound to the GUI component.
@@ -57,23 +89,90 @@ public class GraphicBoard {
     
     /**
      * Called when the bound component is being redrawn.
+     * 
+     * Only the objects intersecting the clip area of the graphics (converted
+     * to the world coordinates) are drawn. Cached layers are copied from
+     * their rasters.
      * @param g the graphics which can be drawn on
      */
     void paint(Graphics2D g) {
-        for (GraphicObject object : allItems()) {
-            if (object != null)
-                g.drawImage(object.getImage(), object.getX(), object.getY(), null);
+        renderingThread = Thread.currentThread();
+        applyPendingChanges();
+        
+        boolean measured = metrics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        
+        Viewport view = viewport;
+        AffineTransform screenTransform = g.getTransform();
+        AffineTransform worldTransform = new AffineTransform(screenTransform);
+        worldTransform.concatenate(view.getTransform());
+        int drawn = 0;
+        
+        try {
+            g.setTransform(worldTransform);
+            Rectangle clip = g.getClipBounds();
+            
+            if (clip == null)
+                clip = view.toWorld(new Rectangle(component.getWidth(), component.getHeight()));
+            
+            List<GraphicObject> visibleItems = getObjectsInArea(clip);
+            int position = 0;
+            
+            for (Layer layer : layers) {
+                boolean cached = layer.isCached();
+                
+                if (cached) {
+                    g.setTransform(screenTransform);
+                    drawn += layer.paintCached(g, component.getWidth(), component.getHeight(), index, view);
+                    g.setTransform(worldTransform);
+                }
+                
+                for (; position < visibleItems.size() && objectLayers.get(visibleItems.get(position)) == layer; position++) {
+                    if (!cached) {
+                        visibleItems.get(position).draw(g, imageAcceleration, volatileImages);
+                        drawn++;
+                    }
+                }
+            }
+        } finally {
+            g.setTransform(screenTransform);
         }
+        
+        if (measured)
+            metrics.recordPaint(System.nanoTime() - start, drawn, Math.max(objectLayers.size() - drawn, 0));
     }
     
     /**
-     * Adds an object to the board and draws it.
+     * Adds an object to the default layer of the board and draws it.
      * @param object the graphical object to be added
      */
     public void addObject(GraphicObject object) {
-        if (!items.contains(object)) {
+        addObject(object, defaultLayer);
+    }
+    
+    /**
+     * Adds an object to the specified layer, in front of all objects of that
+     * layer, and draws it.
+     * @param object the graphical object to be added
+     * @param layer the layer of this board
+     */
+    public void addObject(final GraphicObject object, final Layer layer) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    addObject(object, layer);
+                }
+            });
+            return;
+        }
+        
+        checkLayer(layer);
+        
+        if (!objectLayers.containsKey(object)) {
+            objectLayers.put(object, layer);
+            layer.objects().addLast(object);
             object.assignBoard(this);
-            items.add(object);
         }
     }
     
@@ -94,9 +193,26 @@ public class GraphicBoard {
      * Removes the object from the board.
      * @param object the graphical object to be removed
      */
-    public void removeObject(GraphicObject object) {
-        if (items.remove(object))
+    public void removeObject(final GraphicObject object) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    removeObject(object);
+                }
+            });
+            return;
+        }
+        
+        Layer layer = objectLayers.remove(object);
+        
+        if (layer != null) {
+            layer.objects().remove(object);
+            layer.invalidate(object.getRectangle());
+            index.remove(object);
+            removeFromWorlds(object);
             object.assignBoard(null);
+        }
     }
     
     /**
@@ -119,11 +235,26 @@ public class GraphicBoard {
      * @param oldObject the object to be replaced
      * @param newObject the new object
      */
-    public void replaceObject(GraphicObject oldObject, GraphicObject newObject) {
-        int index = items.indexOf(oldObject);
+    public void replaceObject(final GraphicObject oldObject, final GraphicObject newObject) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    replaceObject(oldObject, newObject);
+                }
+            });
+            return;
+        }
         
-        if (index != -1) {
-            items.set(index, newObject);
+        Layer layer = objectLayers.get(oldObject);
+        
+        if (layer != null && !objectLayers.containsKey(newObject)) {
+            layer.objects().replace(oldObject, newObject);
+            objectLayers.remove(oldObject);
+            objectLayers.put(newObject, layer);
+            layer.invalidate(oldObject.getRectangle());
+            index.remove(oldObject);
+            removeFromWorlds(oldObject);
             oldObject.assignBoard(null);
             newObject.assignBoard(this);
         }
@@ -133,8 +264,309 @@ public class GraphicBoard {
      * Removes all objects from the board and clears it.
      */
     public void clear() {
-        items.clear();
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    clear();
+                }
+            });
+            return;
+        }
+        
+        lock();
+        
+        for (GraphicObject object : allItems())
+            object.assignBoard(null);
+        
+        for (Layer layer : layers) {
+            layer.objects().clear();
+            layer.invalidateAll();
+        }
+        
+        objectLayers.clear();
+        index.clear();
+        
+        if (collisionWorld != null)
+            collisionWorld.clear();
+        
+        if (proximityWorld != null)
+            proximityWorld.clear();
+        
         repaintAll();
+        unlock();
+    }
+    
+    /**
+     * Returns all objects whose rectangles intersect the given area.
+     * @param area the area in the world coordinates
+     * @return the list of objects sorted by the z-order (the backmost first)
+     */
+    public List<GraphicObject> getObjectsInArea(Rectangle area) {
+        return sortByZOrder(index.objectsIn(area));
+    }
+    
+    /**
+     * Adds a new layer in front of all existing layers.
+     * @param name the layer name, unique within this board
+     * @return the new layer
+     */
+    public Layer addLayer(String name) {
+        Layer layer = createLayer(name);
+        layers.add(layer);
+        updateLayerDepths();
+        
+        return layer;
+    }
+    
+    /**
+     * Adds a new layer directly behind an existing layer.
+     * 
+     * For example, a background layer can be added behind the default one.
+     * @param name the layer name, unique within this board
+     * @param inFrontOfNew the existing layer which will be in front of the
+     * new one
+     * @return the new layer
+     */
+    public Layer addLayerBehind(String name, Layer inFrontOfNew) {
+        checkLayer(inFrontOfNew);
+        Layer layer = createLayer(name);
+        layers.add(layers.indexOf(inFrontOfNew), layer);
+        updateLayerDepths();
+        
+        return layer;
+    }
+    
+    /**
+     * Returns the layer with the specified name.
+     * @param name the layer name
+     * @return the layer or null if there is no such layer
+     */
+    public Layer getLayer(String name) {
+        for (Layer layer : layers) {
+            if (layer.getName().equals(name))
+                return layer;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns the layer to which objects are added by default.
+     * @return the default layer
+     */
+    public Layer getDefaultLayer() {
+        return defaultLayer;
+    }
+    
+    /**
+     * Returns all layers of this board.
+     * @return the list of layers (the backmost first)
+     */
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(new ArrayList<Layer>(layers));
+    }
+    
+    /**
+     * Returns the layer containing the object.
+     * @param object the graphic object
+     * @return the layer or null if the object is not on this board
+     */
+    public Layer getLayerOf(GraphicObject object) {
+        return objectLayers.get(object);
+    }
+    
+    /**
+     * Moves the object to another layer, in front of all its objects.
+     * @param object the object located on this board
+     * @param layer the target layer of this board
+     */
+    public void moveToLayer(final GraphicObject object, final Layer layer) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    moveToLayer(object, layer);
+                }
+            });
+            return;
+        }
+        
+        checkLayer(layer);
+        Layer current = objectLayers.get(object);
+        
+        if (current != null && current != layer) {
+            current.objects().remove(object);
+            current.invalidate(object.getRectangle());
+            layer.objects().addLast(object);
+            objectLayers.put(object, layer);
+            repaintObject(object, object.getRectangle());
+        }
+    }
+    
+    /**
+     * Moves the camera so that the given world point is displayed at the
+     * top-left corner of the component.
+     * 
+     * No objects are moved, so scrolling does not notify any detectors.
+     * Cached layers are shifted and only the uncovered parts are redrawn.
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     */
+    public void setCamera(final int x, final int y) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    setCamera(x, y);
+                }
+            });
+            return;
+        }
+        
+        Viewport current = viewport;
+        
+        if (current.getX() != x || current.getY() != y) {
+            viewport = new Viewport(x, y, current.getZoom());
+            repaintAll();
+        }
+    }
+    
+    /**
+     * Returns the world x coordinate displayed at the left edge.
+     * @return the x coordinate of the camera
+     */
+    public int getCameraX() {
+        return viewport.getX();
+    }
+    
+    /**
+     * Returns the world y coordinate displayed at the top edge.
+     * @return the y coordinate of the camera
+     */
+    public int getCameraY() {
+        return viewport.getY();
+    }
+    
+    /**
+     * Sets the zoom of the camera.
+     * 
+     * The world is scaled around the top-left corner of the component.
+     * @param zoom the number of screen pixels per world pixel (1 means no
+     * scaling)
+     */
+    public void setZoom(final double zoom) {
+        if (zoom <= 0)
+            throw new IllegalArgumentException("The zoom must be positive");
+        
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    setZoom(zoom);
+                }
+            });
+            return;
+        }
+        
+        Viewport current = viewport;
+        
+        if (current.getZoom() != zoom) {
+            viewport = new Viewport(current.getX(), current.getY(), zoom);
+            repaintAll();
+        }
+    }
+    
+    /**
+     * Returns the zoom of the camera.
+     * @return the number of screen pixels per world pixel
+     */
+    public double getZoom() {
+        return viewport.getZoom();
+    }
+    
+    /**
+     * Converts a point of the component to the world coordinates.
+     * @param x the x coordinate in the component
+     * @param y the y coordinate in the component
+     * @return the point in the world
+     */
+    public Point screenToWorld(int x, int y) {
+        return viewport.toWorld(x, y);
+    }
+    
+    /**
+     * Converts a point in the world to the coordinates of the component.
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @return the point in the component
+     */
+    public Point worldToScreen(int x, int y) {
+        return viewport.toScreen(x, y);
+    }
+    
+    /**
+     * Returns the collision world of this board.
+     * 
+     * Objects removed from the board are automatically removed from the
+     * collision world, too.
+     * @return the collision world
+     */
+    public CollisionWorld getCollisionWorld() {
+        if (collisionWorld == null)
+            collisionWorld = new CollisionWorld();
+        
+        return collisionWorld;
+    }
+    
+    /**
+     * Returns the proximity world of this board.
+     * 
+     * Objects removed from the board are automatically removed from the
+     * proximity world, too.
+     * @return the proximity world
+     */
+    public ProximityWorld getProximityWorld() {
+        if (proximityWorld == null)
+            proximityWorld = new ProximityWorld();
+        
+        return proximityWorld;
+    }
+    
+    /**
+     * Returns the runtime performance metrics of this board.
+     * 
+     * The metrics are disabled by default; see
+     * {@link BoardMetrics#setEnabled(boolean)}.
+     * @return the metrics
+     */
+    public BoardMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Returns the metrics if they are enabled.
+     * @return the metrics or null if disabled
+     */
+    BoardMetrics getEnabledMetrics() {
+        return metrics.isEnabled() ? metrics : null;
+    }
+    
+    /**
+     * Replaces the spatial index used for hit-testing and area queries.
+     * 
+     * All objects currently located on the board are inserted into the new
+     * index. The default index is a <code>GridIndex</code> with 64x64 px
+     * cells.
+     * @param index the new spatial index
+     */
+    public void setSpatialIndex(SpatialIndex index) {
+        index.clear();
+        
+        for (GraphicObject object : allItems())
+            index.update(object, object.getRectangle());
+        
+        this.index = index;
     }
     
     /**
@@ -143,19 +575,138 @@ public class GraphicBoard {
      * This method can be used to speed up drawing of a large amount of objects
      * at once. Another use is to avoid poor user experience when the objects
      * are drawn one after another with a visible pause.
+     * 
+     * The lock works as a transaction: detectors (e.g. collision detectors)
+     * of the changed objects are not notified immediately, but each of them
+     * only once at the end. Locks can be nested; the board is unlocked
+     * after the last matching unlock() call.
      */
     public void lock() {
-        locked = true;
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    lock();
+                }
+            });
+            return;
+        }
+        
+        lockDepth++;
     }
     
     /**
-     * Unlocks and repaints the board.
+     * Unlocks the board, notifies the detectors of the changed objects and
+     * repaints the board.
      * 
+     * If the board was locked multiple times, only the outermost call
+     * finishes the transaction.
      * @see #lock()
      */
     public void unlock() {
-        locked = false;
-        repaintDirtyArea();
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    unlock();
+                }
+            });
+            return;
+        }
+        
+        if (lockDepth == 0)
+            return;
+        
+        try {
+            if (lockDepth == 1)
+                runPendingDetectors();
+        } finally {
+            lockDepth--;
+        }
+        
+        if (lockDepth == 0)
+            repaintDirtyArea();
+    }
+    
+    /**
+     * Finds out whether the board is locked.
+     * @return true if the board is locked, false otherwise
+     * @see #lock()
+     */
+    public boolean isLocked() {
+        return lockDepth > 0;
+    }
+    
+    /**
+     * Enables or disables drawing of images converted to the format of the
+     * graphics device.
+     * 
+     * A compatible copy of each image is created when it is drawn for the
+     * first time after a change and shared by all objects drawing the same
+     * image. Java 2D can then copy it to the screen without slow format
+     * conversions.
+     * @param enabled true to enable the conversion, false to disable it
+     */
+    public void setImageAcceleration(boolean enabled) {
+        imageAcceleration = enabled;
+        repaintAll();
+    }
+    
+    /**
+     * Enables or disables caching of static objects in volatile images.
+     * 
+     * When enabled together with the image acceleration, the images of
+     * objects which were drawn several times without a change are copied to
+     * <code>VolatileImage</code>s, which can be stored in the video memory.
+     * @param enabled true to enable the volatile images, false to disable them
+     * @see #setImageAcceleration(boolean)
+     */
+    public void setVolatileImageCaching(boolean enabled) {
+        volatileImages = enabled;
+        repaintAll();
+    }
+    
+    /**
+     * Enables or disables the change queue.
+     * 
+     * When the queue is enabled, changes of the board and its objects made
+     * from any thread other than the rendering thread (e.g. moving, rotating,
+     * adding or removing objects, locking) are not applied immediately.
+     * They are put into a lock-free queue and applied in a batch, in the
+     * original order, on the rendering thread just before the board is
+     * painted. Input events are handled on the rendering thread, too.
+     * 
+     * The rendering thread is the AWT event dispatch thread for Swing
+     * components and the thread which last painted the board otherwise.
+     * @param enabled true to enable the queue, false to disable it
+     */
+    public void setChangeQueueEnabled(boolean enabled) {
+        changeQueueEnabled = enabled;
+    }
+    
+    /**
+     * Finds out whether the change queue is enabled.
+     * @return true if the queue is enabled, false otherwise
+     * @see #setChangeQueueEnabled(boolean)
+     */
+    public boolean isChangeQueueEnabled() {
+        return changeQueueEnabled;
+    }
+    
+    /**
+     * Runs the change immediately or, if the change queue is enabled and
+     * this is not the rendering thread, puts it into the queue.
+     * 
+     * This can be used to make a group of changes atomic with respect to
+     * painting.
+     * @param change the code changing the board or its objects
+     * @see #setChangeQueueEnabled(boolean)
+     */
+    public void invokeChange(Runnable change) {
+        if (isChangeQueued())
+            enqueueChange(change);
+        else
+            change.run();
     }
     
     /**
@@ -172,36 +723,61 @@ public class GraphicBoard {
      * @param inFrontOfWhat the object which will be behind the first one (this objet will not be moved)
      */
     void moveInFrontOf(GraphicObject object, GraphicObject inFrontOfWhat) {
-        if (items.indexOf(inFrontOfWhat) != -1) {
-            items.remove(object);
-            items.add(items.indexOf(inFrontOfWhat), object);
+        Layer current = objectLayers.get(object);
+        Layer target = objectLayers.get(inFrontOfWhat);
+        
+        if (current != null && target != null) {
+            if (current != target) {
+                current.objects().remove(object);
+                current.invalidate(object.getRectangle());
+                objectLayers.put(object, target);
+            }
+            
+            target.objects().addAfter(object, inFrontOfWhat);
         }
     }
     
     /**
-     * Moves the object behind all other objects along the Z-axis.
+     * Moves the object behind all other objects of its layer along the
+     * Z-axis.
      * @param object the object to move
      */
     void sendToBackground(GraphicObject object) {
-        items.remove(object);
-        items.add(0, object);
+        Layer layer = objectLayers.get(object);
+        
+        if (layer != null)
+            layer.objects().addFirst(object);
     }
     
     /**
-     * Moves the object in front of all other objecs along the Z-axis.
+     * Moves the object in front of all other objecs of its layer along the
+     * Z-axis.
      * @param object the object to move
      */
     void bringToForeground(GraphicObject object) {
-        items.remove(object);
-        items.add(object);
+        Layer layer = objectLayers.get(object);
+        
+        if (layer != null)
+            layer.objects().addLast(object);
     }
     
     /**
      * Called by the bound component when a mouse click event occurred.
      * @param event the mouse event object
      */
-    void mouseClicked(MouseEvent event) {
-        GraphicObject selectedObject = itemAtPosition(event.getX(), event.getY());
+    void mouseClicked(final MouseEvent event) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    mouseClicked(event);
+                }
+            });
+            return;
+        }
+        
+        Point point = viewport.toWorld(event.getX(), event.getY());
+        GraphicObject selectedObject = itemAtPosition(point.x, point.y);
         
         if (selectedObject != null)
             selectedObject.mouseClicked();
@@ -212,20 +788,43 @@ public class GraphicBoard {
      * occurred.
      * @param event the mouse event object
      */
-    void mousePressed(MouseEvent event) {
-        draggedItem = itemAtPosition(event.getX(), event.getY());
+    void mousePressed(final MouseEvent event) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    mousePressed(event);
+                }
+            });
+            return;
+        }
+        
+        Point point = viewport.toWorld(event.getX(), event.getY());
+        draggedItem = itemAtPosition(point.x, point.y);
         
         if (draggedItem != null)
-            draggedPoint = new Point(event.getX() - draggedItem.getX(), event.getY() - draggedItem.getY());
+            draggedPoint = new Point(point.x - draggedItem.getX(), point.y - draggedItem.getY());
     }
     
     /**
      * Called by the bound component when a mouse drag event occurred.
      * @param event the mouse event object
      */
-    void mouseDragged(MouseEvent event) {
-        if (draggedItem != null && draggedItem.isDragDropEnabled())
-            draggedItem.moveTo(event.getX() - (int) draggedPoint.getX(), event.getY() - (int) draggedPoint.getY());
+    void mouseDragged(final MouseEvent event) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    mouseDragged(event);
+                }
+            });
+            return;
+        }
+        
+        if (draggedItem != null && draggedItem.isDragDropEnabled()) {
+            Point point = viewport.toWorld(event.getX(), event.getY());
+            draggedItem.moveTo(point.x - draggedPoint.x, point.y - draggedPoint.y);
+        }
     }
     
     /**
@@ -233,7 +832,17 @@ public class GraphicBoard {
      * component had focus.
      * @param event the key event object
      */
-    void keyEvent(KeyEvent event) {
+    void keyEvent(final KeyEvent event) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    keyEvent(event);
+                }
+            });
+            return;
+        }
+        
         if (keyListener != null)
             keyListener.onKeyEvent(event);
         
@@ -244,14 +853,121 @@ public class GraphicBoard {
     }
     
     /**
-     * Repaints the selected area.
+     * Finds out whether a change made by the current thread must be queued.
+     * @return true if the change queue is enabled and this is not the
+     * rendering thread, false otherwise
+     */
+    boolean isChangeQueued() {
+        if (!changeQueueEnabled)
+            return false;
+        
+        if (component instanceof JComponent)
+            return !EventQueue.isDispatchThread();
+        else
+            return Thread.currentThread() != renderingThread;
+    }
+    
+    /**
+     * Puts the change into the queue and makes sure it will be applied soon.
+     * @param change the change
+     */
+    void enqueueChange(Runnable change) {
+        pendingChanges.offer(change);
+        
+        if (changesScheduled.compareAndSet(false, true)) {
+            if (component instanceof JComponent) {
+                EventQueue.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyPendingChanges();
+                    }
+                });
+            } else {
+                component.repaint(new Rectangle(component.getWidth(), component.getHeight()));
+            }
+        }
+    }
+    
+    /**
+     * Updates the position and size of the object in the spatial index.
+     * @param object the graphic object located on this board
+     */
+    void updateIndex(GraphicObject object) {
+        index.update(object, object.getRectangle());
+    }
+    
+    /**
+     * Notifies the detectors of a changed object, or remembers them until
+     * the end of the transaction if the board is locked.
+     * @param detectors the detectors of an object located on this board
+     */
+    void notifyDetectors(Collection<Detector> detectors) {
+        if (lockDepth > 0) {
+            pendingDetectors.addAll(detectors);
+            return;
+        }
+        
+        if (metrics.isEnabled())
+            metrics.recordDetectorNotifications(detectors.size());
+        
+        for (Detector detector : detectors)
+            detector.objectChanged();
+    }
+    
+    /**
+     * Repaints the area occupied by the object, including the cached raster
+     * of its layer.
+     * @param object the graphic object located on this board
      * @param area the rectangle to repaint
      */
+    void repaintObject(GraphicObject object, Rectangle area) {
+        Layer layer = objectLayers.get(object);
+        
+        if (layer != null) {
+            Rectangle visibleArea = area.intersection(viewport.toWorld(componentBounds()));
+            
+            if (!visibleArea.isEmpty())
+                layer.invalidate(visibleArea);
+        }
+        
+        repaintArea(area);
+    }
+    
+    /**
+     * Repaints the selected area, if it is visible.
+     * @param area the rectangle to repaint, in the world coordinates
+     */
     void repaintArea(Rectangle area) {
-        if (locked) {
-            dirtyArea = dirtyArea.union(area);
-        } else {
-            component.repaint(area);
+        repaintScreenArea(viewport.toScreen(area).intersection(componentBounds()));
+    }
+    
+    /**
+     * Applies all queued changes on the current (rendering) thread.
+     */
+    private void applyPendingChanges() {
+        changesScheduled.set(false);
+        Runnable change;
+        
+        while ((change = pendingChanges.poll()) != null)
+            change.run();
+    }
+    
+    /**
+     * Notifies each detector remembered during the transaction once.
+     * 
+     * Objects changed by the detectors' listeners are handled in the next
+     * round, until no detector remains.
+     */
+    private void runPendingDetectors() {
+        while (!pendingDetectors.isEmpty()) {
+            Set<Detector> detectors = pendingDetectors;
+            pendingDetectors = new LinkedHashSet<Detector>();
+            
+            if (metrics.isEnabled())
+                metrics.recordDetectorNotifications(detectors.size());
+            
+            for (Detector detector : detectors)
+                detector.objectChanged();
         }
     }
     
@@ -259,17 +975,45 @@ public class GraphicBoard {
      * Repaints the whole board.
      */
     private void repaintAll() {
-        Rectangle wholeArea = new Rectangle(component.getWidth(), component.getHeight());
-        repaintArea(wholeArea);
+        repaintScreenArea(componentBounds());
+    }
+    
+    /**
+     * Repaints the area of the component.
+     * @param area the rectangle to repaint, in the component coordinates
+     */
+    private void repaintScreenArea(Rectangle area) {
+        if (area.isEmpty())
+            return;
+        
+        if (metrics.isEnabled())
+            metrics.recordRepaint((long) area.width * area.height);
+        
+        if (lockDepth > 0) {
+            dirtyRegion.add(area);
+        } else {
+            component.repaint(area);
+        }
     }
     
     /**
-     * Repaints the union of all "dirty" areas - the rectangles which were told
-     * to be repainted while the board was locked.
+     * Returns the bounds of the bound component.
+     * @return the rectangle starting at [0, 0]
+     */
+    private Rectangle componentBounds() {
+        return new Rectangle(component.getWidth(), component.getHeight());
+    }
+    
+    /**
+     * Repaints all "dirty" areas - the rectangles which were told to be
+     * repainted while the board was locked.
+     * 
+     * Distant areas are repainted separately, so two small objects changed
+     * in the opposite corners do not cause the whole board to be repainted.
      */
     private void repaintDirtyArea() {
-        component.repaint(dirtyArea);
-        dirtyArea = new Rectangle();
+        for (Rectangle area : dirtyRegion.flush())
+            component.repaint(area);
     }
     
     /**
@@ -279,17 +1023,106 @@ public class GraphicBoard {
      * @return the graphic object or null if none satisfied the requirements
      */
     private GraphicObject itemAtPosition(int x, int y) {
-        List<GraphicObject> itemList = allItems();
-        Collections.reverse(itemList);
+        GraphicObject foremost = null;
+        Layer foremostLayer = null;
+        
+        for (GraphicObject object : index.objectsAt(x, y)) {
+            Layer layer = objectLayers.get(object);
+            
+            if (layer == null)
+                continue;
+            
+            if (foremost == null || layer.getDepth() > foremostLayer.getDepth()
+                    || (layer == foremostLayer && layer.objects().keyOf(object) > layer.objects().keyOf(foremost))) {
+                foremost = object;
+                foremostLayer = layer;
+            }
+        }
         
-        for (GraphicObject object : itemList) {
-            if (object != null && x >= object.getX() && x < object.getX() + object.getWidth()
-                    && y >= object.getY() && y < object.getY() + object.getHeight()) {
-                return object;
+        return foremost;
+    }
+    
+    /**
+     * Stores the current position of each layer in the layer itself.
+     */
+    private void updateLayerDepths() {
+        for (int i = 0; i < layers.size(); i++)
+            layers.get(i).setDepth(i);
+    }
+    
+    /**
+     * Creates a layer with a name not yet used on this board.
+     * @param name the layer name
+     * @return the new layer
+     */
+    private Layer createLayer(String name) {
+        if (getLayer(name) != null)
+            throw new IllegalArgumentException("Duplicate layer name: " + name);
+        
+        return new Layer(name);
+    }
+    
+    /**
+     * Makes sure the layer belongs to this board.
+     * @param layer the layer
+     */
+    private void checkLayer(Layer layer) {
+        if (!layers.contains(layer))
+            throw new IllegalArgumentException("The layer does not belong to this board");
+    }
+    
+    /**
+     * Removes the object from all board-level detection worlds.
+     * @param object the object being removed from the board
+     */
+    private void removeFromWorlds(GraphicObject object) {
+        if (collisionWorld != null)
+            collisionWorld.removeObject(object);
+        
+        if (proximityWorld != null)
+            proximityWorld.removeObject(object);
+    }
+    
+    /**
+     * Sorts the objects according to their position on the Z-axis.
+     * 
+     * Only the given objects are sorted, so the time does not depend on the
+     * total number of objects on the board.
+     * @param objects the objects located on this board
+     * @return the sorted list (the backmost object first)
+     */
+    private List<GraphicObject> sortByZOrder(Collection<GraphicObject> objects) {
+        List<GraphicObject> result = new ArrayList<GraphicObject>(objects.size());
+        
+        if (objects.isEmpty())
+            return result;
+        
+        if (layers.size() == 1)
+            return defaultLayer.objects().sort(objects);
+        
+        Map<Layer, List<GraphicObject>> byLayer = new IdentityHashMap<Layer, List<GraphicObject>>();
+        
+        for (GraphicObject object : objects) {
+            Layer layer = objectLayers.get(object);
+            
+            if (layer != null) {
+                List<GraphicObject> layerObjects = byLayer.get(layer);
+                
+                if (layerObjects == null)
+                    byLayer.put(layer, layerObjects = new ArrayList<GraphicObject>());
+                
+                layerObjects.add(object);
             }
         }
         
-        return null;
+        for (Layer layer : layers) {
+            List<GraphicObject> layerObjects = byLayer.get(layer);
+            
+            if (layerObjects != null)
+                result.addAll(layer.objects().sort(layerObjects));
+        }
+        
+        return result;
     }
     
     /**
@@ -301,6 +1134,11 @@ public class GraphicBoard {
      * @return the list of all items
      */
     private List<GraphicObject> allItems() {
-        return new ArrayList<GraphicObject>(items);
+        List<GraphicObject> result = new ArrayList<GraphicObject>(objectLayers.size());
+        
+        for (Layer layer : layers)
+            result.addAll(layer.objects().toList());
+        
+        return result;
     }
 }
@@ -0,0 +1,235 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferStrategy;
+
+/**
+ * The AWT canvas containing the graphic board, painted by active rendering.
+ * 
+ * Unlike the <code>GraphicPanel</code>, which waits for Swing to schedule
+ * repaints, the canvas runs its own render loop with a fixed frame rate and
+ * presents the frames by flipping buffers of a <code>BufferStrategy</code>.
+ * A frame is rendered only if something changed since the previous one.
+ * 
+ * The canvas must be displayable (e.g. added to a visible frame) before
+ * the render loop is started.
+ * 
+ * The board is painted on the render loop thread, while input events arrive
+ * on the AWT event dispatch thread. Therefore the change queue of the board
+ * is enabled: changes made on any other thread than the one rendering the
+ * frames (including the event handlers) are applied just before the next
+ * frame is painted. If the queue is disabled, the application must make
+ * sure the board is not changed while a frame is rendered.
+ * @author Matúš Sulír
+ */
+public class GraphicCanvas extends Canvas implements GraphicComponent {
+    private GraphicBoard board;
+    private int frameRate;
+    private Thread renderThread;
+    private volatile boolean running = false;
+    private volatile boolean dirty = true;
+    
+    /**
+     * Constructs a canvas rendering 60 frames per second.
+     */
+    public GraphicCanvas() {
+        this(60);
+    }
+    
+    /**
+     * Constructs a canvas with a custom frame rate.
+     * 
+     * Creates a graphic board with the change queue enabled and registers
+     * the necessary events.
+     * @param frameRate the number of frames per second
+     */
+    public GraphicCanvas(int frameRate) {
+        if (frameRate <= 0)
+            throw new IllegalArgumentException("The frame rate must be positive");
+        
+        this.frameRate = frameRate;
+        board = new GraphicBoard(this);
+        board.setChangeQueueEnabled(true);
+        
+        setIgnoreRepaint(true);
+        BoardInput.forward(this, board);
+    }
+    
+    /**
+     * Creates the buffer strategy and starts the render loop.
+     * @throws IllegalStateException if the canvas is not displayable
+     */
+    public synchronized void start() {
+        if (running)
+            return;
+        
+        if (!isDisplayable())
+            throw new IllegalStateException("The canvas must be displayable");
+        
+        if (getBufferStrategy() == null)
+            createBufferStrategy(2);
+        
+        running = true;
+        dirty = true;
+        renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                renderLoop();
+            }
+        }, "Soga2D render loop");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+    
+    /**
+     * Stops the render loop and waits until the last frame is finished.
+     */
+    public void stop() {
+        Thread thread;
+        
+        synchronized (this) {
+            running = false;
+            thread = renderThread;
+            renderThread = null;
+        }
+        
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Renders the whole board into the back buffer and shows it.
+     * 
+     * This is called by the render loop, but it can also be called by a
+     * custom game loop when the built-in one is not started.
+     */
+    public void renderFrame() {
+        BufferStrategy strategy = getBufferStrategy();
+        
+        if (strategy == null)
+            return;
+        
+        dirty = false;
+        
+        do {
+            do {
+                Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                
+                try {
+                    g.setColor(getBackground());
+                    g.fillRect(0, 0, getWidth(), getHeight());
+                    board.paint(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            
+            strategy.show();
+        } while (strategy.contentsLost());
+    }
+    
+    /**
+     * Returns the associated graphic board.
+     * @return the board
+     */
+    public GraphicBoard getBoard() {
+        return board;
+    }
+    
+    /**
+     * Marks the canvas to be rendered in the next frame.
+     * 
+     * The whole frame is always rendered, because the content of the back
+     * buffer is undefined after a flip.
+     * @param area the rectangle to repaint
+     */
+    @Override
+    public void repaint(Rectangle area) {
+        dirty = true;
+    }
+    
+    /**
+     * Called by AWT when the canvas was damaged (e.g. uncovered).
+     * @param g the graphics (not used)
+     */
+    @Override
+    public void paint(Graphics g) {
+        dirty = true;
+    }
+    
+    /**
+     * Called by AWT to update the canvas; the render loop does it instead.
+     * @param g the graphics (not used)
+     */
+    @Override
+    public void update(Graphics g) {
+        dirty = true;
+    }
+    
+    /**
+     * Stops the render loop before the native resources (including the
+     * buffer strategy) are released.
+     */
+    @Override
+    public void removeNotify() {
+        stop();
+        super.removeNotify();
+    }
+    
+    /**
+     * Renders the frames at the fixed rate until stopped.
+     */
+    private void renderLoop() {
+        long period = 1000000000L / frameRate;
+        long nextFrame = System.nanoTime();
+        
+        while (running) {
+            if (dirty)
+                renderFrame();
+            
+            nextFrame += period;
+            long delay = nextFrame - System.nanoTime();
+            
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } else {
+                nextFrame = System.nanoTime();
+            }
+        }
+    }
+}
@@ -48,6 +48,18 @@ import soga2d.events.MouseClickListener;
  * </ul>
  * <em>Note:</em> Calling <code>beforeChange()</code> and
  * <code>afterChange()</code> in a constructor is not necessary.
+ * <p>
+ * Draw only into an image created by <code>createImage()</code> (or another
+ * image owned by the object). Images loaded through <code>Picture</code> or
+ * <code>ImageCache</code> are shared by all objects using the same file and
+ * must not be modified; copy them first if needed.
+ * <p>
+ * Procedural objects, e.g. simple shapes, do not need the image at all.
+ * They return true from <code>isProcedural()</code>, override
+ * <code>getWidth()</code>, <code>getHeight()</code> and
+ * <code>paint()</code>, which draws them directly on the board, and
+ * optionally <code>isOpaque()</code> and <code>getOpacityRunEnd()</code>
+ * used for collision detection.
  * @author Matúš Sulír
  */
 public abstract class GraphicObject { 
@@ -64,13 +76,20 @@ public abstract class GraphicObject {
     /**
      * The internal bitmap image without any transformations applied.
      * 
-     * Contains also the width and height of this graphical object.
+     * Contains also the width and height of this graphical object, unless it
+     * is procedural. The image can be shared with other objects (e.g. when
+     * loaded through the image cache), so it can be drawn into only if the
+     * object created it itself.
      */
     protected BufferedImage image;
     
     private BufferedImage transformedImage;
+    private BufferedImage lastImage;
+    private BufferedImage compositeImage;
+    private CollisionMask collisionMask;
     private Rectangle oldRectangle = new Rectangle();
     private GraphicBoard board;
+    private GraphicObject parent;
     private MouseClickListener mouseClickListener;
     private KeyListener keyListener;
     private List<Detector> detectors = new ArrayList<Detector>();
@@ -116,8 +135,20 @@ public abstract class GraphicObject {
      * behavior is not yet defined.
      * @param object the subobject to add
      */
-    public void addSubobject(GraphicObject object) {
+    public void addSubobject(final GraphicObject object) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    addSubobject(object);
+                }
+            });
+            return;
+        }
+        
         subobjects.add(object);
+        object.parent = this;
+        invalidateCaches();
         repaint();
     }
     
@@ -125,8 +156,21 @@ public abstract class GraphicObject {
      * Removes the subobject of this object.
      * @param object the subobject to remove
      */
-    public void removeSubObject(GraphicObject object) {
-        subobjects.remove(object);
+    public void removeSubObject(final GraphicObject object) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    removeSubObject(object);
+                }
+            });
+            return;
+        }
+        
+        if (subobjects.remove(object))
+            object.parent = null;
+        
+        invalidateCaches();
         repaint();
     }
     
@@ -176,12 +220,24 @@ public abstract class GraphicObject {
      * @param x the new x coordinate
      * @param y the new y coordinate
      */
-    public void moveTo(int x, int y) {
+    public void moveTo(final int x, final int y) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    moveTo(x, y);
+                }
+            });
+            return;
+        }
+        
         saveOldArea();
         
         this.x = x;
         this.y = y;
         
+        invalidateParents();
+        updateIndex();
         repaint();
         notifyDetectors();
     }
@@ -191,7 +247,17 @@ public abstract class GraphicObject {
      * @param deltaX the x coordinate change (can be either negative or positive)
      * @param deltaY the y coordinate change (can be either negative or positive)
      */
-    public void moveBy(int deltaX, int deltaY) {
+    public void moveBy(final int deltaX, final int deltaY) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    moveBy(deltaX, deltaY);
+                }
+            });
+            return;
+        }
+        
         moveTo(x + deltaX, y + deltaY);
     }
     
@@ -200,10 +266,21 @@ public abstract class GraphicObject {
      * @param angle the angle in degrees
      * @see #rotate(int)
      */
-    public void setAngle(int angle) {
+    public void setAngle(final int angle) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    setAngle(angle);
+                }
+            });
+            return;
+        }
+        
         this.angle = angle;
         
         applyTransformations();
+        invalidateCaches();
         repaint();
         notifyDetectors();
     }
@@ -214,15 +291,38 @@ public abstract class GraphicObject {
      * Non-square objects may be cropped.
      * @param angle the angle in degrees
      */
-    public void rotate(int angle) {
+    public void rotate(final int angle) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    rotate(angle);
+                }
+            });
+            return;
+        }
+        
         setAngle(this.angle + angle);
     }
     
     /**
      * Moves this object in front of an another object along the Z-axis.
+     * 
+     * If the other object is in a different layer, this object is moved into
+     * that layer.
      * @param what the object which will be behind the first one (this objet will not be moved)
      */
-    public void moveInFrontOf(GraphicObject what) {
+    public void moveInFrontOf(final GraphicObject what) {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    moveInFrontOf(what);
+                }
+            });
+            return;
+        }
+        
         if (board != null)
             board.moveInFrontOf(this, what);
         
@@ -230,9 +330,20 @@ public abstract class GraphicObject {
     }
     
     /**
-     * Moves this object behind all other objects along the Z-axis.
+     * Moves this object behind all other objects of its layer along the
+     * Z-axis.
      */
     public void sendToBackground() {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    sendToBackground();
+                }
+            });
+            return;
+        }
+        
         if (board != null)
             board.sendToBackground(this);
         
@@ -240,9 +351,20 @@ public abstract class GraphicObject {
     }
     
     /**
-     * Moves this object in front of all other objecs along the Z-axis.
+     * Moves this object in front of all other objecs of its layer along the
+     * Z-axis.
      */
     public void bringToForeground() {
+        if (isChangeQueued()) {
+            enqueueChange(new Runnable() {
+                @Override
+                public void run() {
+                    bringToForeground();
+                }
+            });
+            return;
+        }
+        
         if (board != null)
             board.bringToForeground(this);
        
@@ -305,23 +427,112 @@ public abstract class GraphicObject {
     
     /**
      * Returns the current content of the graphic object as an image.
+     * 
+     * If the object has subobjects or is procedural, the composed image is
+     * created on request and cached until this object or any of its
+     * subobjects changes. Rotated images are shared between objects, so the
+     * returned image must not be modified.
      * @return the image representation
      */
     public BufferedImage getImage() {
-        if (subobjects.isEmpty()) {
+        if (subobjects.isEmpty() && !isProcedural())
             return transformedImage;
-        } else {
-            BufferedImage resultImage = new BufferedImage(getWidth(), getHeight(), image.getType());
+        
+        BufferedImage resultImage = compositeImage;
+        
+        if (resultImage == null) {
+            int type = isProcedural() ? BufferedImage.TYPE_INT_ARGB : image.getType();
+            resultImage = new BufferedImage(getWidth(), getHeight(), type);
             Graphics2D g = resultImage.createGraphics();
-            g.drawImage(image, null, 0, 0);
+            
+            if (isProcedural()) {
+                Graphics2D contentGraphics = (Graphics2D) g.create();
+                paintRotated(contentGraphics);
+                contentGraphics.dispose();
+            } else {
+                g.drawImage(image, null, 0, 0);
+            }
             
             for (GraphicObject object : subobjects)
                 g.drawImage(object.getImage(), null, object.getX(), object.getY());
             
-            return resultImage;
+            g.dispose();
+            compositeImage = resultImage;
         }
+        
+        return resultImage;
     }
 
+    /**
+     * Returns the mask of non-transparent pixels used for collision detection.
+     * 
+     * The mask of an image is built lazily and kept until the object's
+     * content changes. A procedural object computes only the requested area
+     * each time, because its full mask could be very large.
+     * @param area the area which will be tested, relative to the object's
+     * top-left corner
+     * @return the collision mask covering at least the area
+     */
+    CollisionMask getCollisionMask(Rectangle area) {
+        if (isProcedural() && subobjects.isEmpty())
+            return new CollisionMask(this, angle, area);
+        
+        CollisionMask mask = collisionMask;
+        
+        if (mask == null)
+            collisionMask = mask = new CollisionMask(getImage());
+        
+        return mask;
+    }
+    
+    /**
+     * Draws the current content of the object at its position.
+     * @param g the graphics to draw on
+     * @param accelerate true to draw a copy converted to the format of the
+     * graphics device
+     * @param useVolatile true to allow copying the image to a volatile image
+     * if it does not change
+     */
+    void draw(Graphics2D g, boolean accelerate, boolean useVolatile) {
+        if (isProcedural() && subobjects.isEmpty()) {
+            Graphics2D objectGraphics = (Graphics2D) g.create();
+            objectGraphics.translate(x, y);
+            paintRotated(objectGraphics);
+            objectGraphics.dispose();
+            return;
+        }
+        
+        BufferedImage content = getImage();
+        
+        if (!accelerate) {
+            g.drawImage(content, x, y, null);
+            return;
+        }
+        
+        AcceleratedImage.of(content).draw(g, content, x, y, useVolatile);
+    }
+    
+    /**
+     * Returns the board this object is located on.
+     * @return the board or null if the object is not on any board
+     */
+    GraphicBoard getBoard() {
+        return board;
+    }
+    
+    /**
+     * Returns the board this object or its outermost parent is located on.
+     * @return the board or null if there is none
+     */
+    GraphicBoard getRootBoard() {
+        for (GraphicObject object = this; object != null; object = object.parent) {
+            if (object.board != null)
+                return object.board;
+        }
+        
+        return null;
+    }
+    
     /**
      * Assigns the object to the concrete board.
      * 
@@ -334,7 +545,8 @@ public abstract class GraphicObject {
             this.board = null;
         } else {
             this.board = board;
-            afterChange();
+            oldRectangle = getRectangle();
+            refresh();
         }
     }
     
@@ -348,6 +560,61 @@ public abstract class GraphicObject {
         transformedImage = image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
     }
     
+    /**
+     * Finds out whether this object draws itself directly instead of using
+     * the internal image.
+     * 
+     * Procedural objects must override <code>getWidth()</code>,
+     * <code>getHeight()</code> and <code>paint()</code>.
+     * @return true if the object is procedural, false otherwise
+     */
+    protected boolean isProcedural() {
+        return false;
+    }
+    
+    /**
+     * Draws the content of a procedural object, without rotation.
+     * 
+     * The graphics is translated so that the top-left corner of the object
+     * is at [0, 0] and clipped to the object's size.
+     * @param g the graphics to draw on
+     */
+    protected void paint(Graphics2D g) {
+        g.drawImage(image, 0, 0, null);
+    }
+    
+    /**
+     * Finds out whether the pixel of a procedural object's content, without
+     * rotation, is not transparent.
+     * 
+     * This is used for collision detection. By default, all pixels are
+     * opaque.
+     * @param x the x coordinate relative to the object
+     * @param y the y coordinate relative to the object
+     * @return true if the pixel is opaque, false otherwise
+     */
+    protected boolean isOpaque(int x, int y) {
+        return true;
+    }
+    
+    /**
+     * Returns the end of the run of pixels in a row of a procedural object's
+     * content, without rotation, which are all opaque or all transparent,
+     * like the pixel at [x, y].
+     * 
+     * Collision masks of objects which are not rotated are filled a whole
+     * run at a time, so shapes with large uniform areas should override
+     * this method. By default, each pixel is a separate run.
+     * @param x the x coordinate of the first pixel of the run
+     * @param y the y coordinate of the row
+     * @param endX the x coordinate after the last pixel which is needed
+     * @return the x coordinate after the run, greater than x and not greater
+     * than endX
+     */
+    protected int getOpacityRunEnd(int x, int y, int endX) {
+        return x + 1;
+    }
+    
     /**
      * Adds a detector to notify when the object changes (e.g. moves).
      * @param detector the detector (collision, proximity, ...)
@@ -356,12 +623,32 @@ public abstract class GraphicObject {
         detectors.add(detector);
     }
     
+    /**
+     * Removes a previously added detector.
+     * @param detector the detector
+     */
+    void removeDetector(Detector detector) {
+        detectors.remove(detector);
+    }
+    
     /**
      * Nofifies all associated detectors after the object changes.
+     * 
+     * If the board is locked, the detectors are notified when it is
+     * unlocked.
      */
     private void notifyDetectors() {
-        for (Detector detector : detectors)
-            detector.objectChanged();
+        if (detectors.isEmpty())
+            return;
+        
+        GraphicBoard rootBoard = getRootBoard();
+        
+        if (rootBoard != null) {
+            rootBoard.notifyDetectors(detectors);
+        } else {
+            for (Detector detector : detectors)
+                detector.objectChanged();
+        }
     }
     
     /**
@@ -382,6 +669,23 @@ public abstract class GraphicObject {
             keyListener.onKeyEvent(event);
     }
     
+    /**
+     * Runs a change of this object immediately or, if the board's change
+     * queue is enabled and this is not the rendering thread, puts it into
+     * the queue.
+     * 
+     * Subclasses should wrap the whole <code>beforeChange()</code> -
+     * <code>afterChange()</code> block into this method.
+     * @param change the code changing the object
+     * @see GraphicBoard#setChangeQueueEnabled(boolean)
+     */
+    protected void invokeChange(Runnable change) {
+        if (isChangeQueued())
+            enqueueChange(change);
+        else
+            change.run();
+    }
+    
     /**
      * Call this method in a subclass before any change.
      */
@@ -393,32 +697,169 @@ public abstract class GraphicObject {
      * Call this method in a subclass after any change.
      */
     protected void afterChange() {
+        invalidateImageCopies();
+        refresh();
+    }
+    
+    /**
+     * Call this method in a subclass after a change of the content limited
+     * to the given area.
+     * 
+     * Only the area is repainted. The position and size must not change, so
+     * calling <code>beforeChange()</code> is not necessary.
+     * @param area the changed area, relative to the top-left corner of the
+     * object
+     */
+    protected void afterChange(Rectangle area) {
+        invalidateImageCopies();
+        applyTransformations();
+        invalidateCaches();
+        
+        if (board != null) {
+            Rectangle bounds = getRectangle();
+            Rectangle changed = bounds;
+            
+            if (angle % 360 == 0)
+                changed = bounds.intersection(new Rectangle(x + area.x, y + area.y, area.width, area.height));
+            
+            board.repaintObject(this, changed);
+        }
+        
+        notifyDetectors();
+    }
+    
+    /**
+     * Updates the derived data, the index and the screen after the object's
+     * state changed, keeping the cached rotations of an unchanged image.
+     */
+    private void refresh() {
         applyTransformations();
+        invalidateCaches();
+        updateIndex();
         repaint();
         notifyDetectors();
     }
     
+    /**
+     * Discards all data derived from the object's content, e.g. the composed
+     * image or the collision mask.
+     * 
+     * The parent objects are invalidated and repainted too, because their
+     * content includes this object.
+     */
+    private void invalidateCaches() {
+        discardCaches();
+        invalidateParents();
+    }
+    
+    /**
+     * Discards the data derived from the content of all parent objects and
+     * repaints them, e.g. after this subobject moved.
+     */
+    private void invalidateParents() {
+        for (GraphicObject object = parent; object != null; object = object.parent) {
+            object.discardCaches();
+            
+            if (object.board != null)
+                object.board.repaintObject(object, object.getRectangle());
+        }
+    }
+    
+    /**
+     * Discards the data derived from the content of this object only.
+     */
+    private void discardCaches() {
+        compositeImage = null;
+        collisionMask = null;
+    }
+    
+    /**
+     * Drops the cached rotations and accelerated copies of the internal image
+     * if it could have been modified in place.
+     * 
+     * If a subclass assigned a different image (e.g. the next animation
+     * frame), the cached copies of the new image are still valid. The
+     * last image is remembered at any angle, because the image can be
+     * redrawn while the object is not rotated and rotated afterwards.
+     */
+    private void invalidateImageCopies() {
+        if (image == lastImage) {
+            RotationCache.invalidate(image);
+            AcceleratedImage.invalidate(image);
+        }
+    }
+    
+    /**
+     * Draws a procedural object rotated the same way as images are.
+     * @param g the graphics translated to the object's top-left corner
+     */
+    private void paintRotated(Graphics2D g) {
+        g.clipRect(0, 0, getWidth(), getHeight());
+        
+        if (angle % 360 != 0)
+            g.rotate(Math.toRadians(angle), getWidth() / 2, getHeight() / 2);
+        
+        paint(g);
+    }
+    
     /**
      * Applies the currently selected transformations (e.g. rotation) to this image.
      */
     private void applyTransformations() {
-        if (angle == 0) {
-            transformedImage = image;
-        } else {
-            transformedImage = new BufferedImage(getWidth(), getHeight(), image.getType());
-            Graphics2D g = transformedImage.createGraphics();
-            g.rotate(Math.toRadians(angle), getWidth() / 2, getHeight() / 2);
-            g.drawImage(image, null, 0, 0);
-        }
+        transformedImage = RotationCache.getRotated(image, angle);
+        lastImage = image;
+    }
+    
+    /**
+     * Finds out whether changes made by the current thread must be put into
+     * the board's change queue.
+     * @return true if the change must be queued, false otherwise
+     */
+    private boolean isChangeQueued() {
+        GraphicBoard rootBoard = getRootBoard();
+        
+        return rootBoard != null && rootBoard.isChangeQueued();
+    }
+    
+    /**
+     * Puts the change into the change queue of the board.
+     * @param change the change
+     */
+    private void enqueueChange(Runnable change) {
+        GraphicBoard rootBoard = getRootBoard();
+        
+        if (rootBoard != null)
+            rootBoard.enqueueChange(change);
+        else
+            change.run();
+    }
+    
+    /**
+     * Tells the board's spatial index the current position and size of this
+     * object.
+     */
+    private void updateIndex() {
+        if (board != null)
+            board.updateIndex(this);
     }
     
     /**
      * Repaints this object on a board and other (or all) objects if necessary
      * (depends on an implementation).
+     * 
+     * The original and the new area are requested separately, so an object
+     * moved far away does not cause the whole area between them to be
+     * repainted.
      */
     private void repaint() {
-        if (board != null)
-            board.repaintArea(oldRectangle.union(getRectangle()));
+        if (board != null) {
+            Rectangle newRectangle = getRectangle();
+            
+            if (!newRectangle.equals(oldRectangle))
+                board.repaintObject(this, oldRectangle);
+            
+            board.repaintObject(this, newRectangle);
+        }
     }
     
     /**
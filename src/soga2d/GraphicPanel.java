@@ -23,13 +23,11 @@
  */
 package soga2d;
 
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseMotionAdapter;
+import java.awt.Rectangle;
+import java.util.List;
 import javax.swing.JPanel;
 
 /**
@@ -39,6 +37,8 @@ import javax.swing.JPanel;
  */
 public class GraphicPanel extends JPanel implements GraphicComponent {
     private GraphicBoard board;
+    private final DirtyRegion pendingRegion = new DirtyRegion();
+    private boolean paintScheduled = false;
     
     /**
      * The default constructor.
@@ -48,39 +48,33 @@ public class GraphicPanel extends JPanel implements GraphicComponent {
     public GraphicPanel() {
         board = new GraphicBoard(this);
         
-        addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent event) {
-                board.mouseClicked(event);
-            }
+        BoardInput.forward(this, board);
+    }
+    
+    /**
+     * Repaints the selected area of the panel.
+     * 
+     * Swing merges all requested areas into one clip rectangle, so the areas
+     * requested by the board are collected instead and each of them is
+     * painted separately on the event dispatch thread. The objects located
+     * between distant areas are then skipped.
+     * @param area the rectangle to repaint
+     */
+    @Override
+    public void repaint(Rectangle area) {
+        synchronized (pendingRegion) {
+            pendingRegion.add(area);
             
-            @Override
-            public void mousePressed(MouseEvent event) {
-                board.mousePressed(event);
-            }
-        });
-        
-        addMouseMotionListener(new MouseMotionAdapter() {
-            @Override
-            public void mouseDragged(MouseEvent event) {
-                board.mouseDragged(event);
-            }
-        });
+            if (paintScheduled)
+                return;
+            
+            paintScheduled = true;
+        }
         
-        addKeyListener(new KeyListener() {
-            @Override
-            public void keyPressed(KeyEvent event) {
-                board.keyEvent(event);
-            }
-
-            @Override
-            public void keyTyped(KeyEvent event) {
-                board.keyEvent(event);
-            }
-
+        EventQueue.invokeLater(new Runnable() {
             @Override
-            public void keyReleased(KeyEvent event) {
-                board.keyEvent(event);
+            public void run() {
+                paintPendingAreas();
             }
         });
     }
@@ -103,4 +97,19 @@ public class GraphicPanel extends JPanel implements GraphicComponent {
     public GraphicBoard getBoard() {
         return board;
     }
+    
+    /**
+     * Paints all areas requested since the last call, one by one.
+     */
+    private void paintPendingAreas() {
+        List<Rectangle> areas;
+        
+        synchronized (pendingRegion) {
+            areas = pendingRegion.flush();
+            paintScheduled = false;
+        }
+        
+        for (Rectangle area : areas)
+            paintImmediately(area);
+    }
 }
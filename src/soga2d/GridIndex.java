@@ -0,0 +1,328 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The spatial index dividing the board into a uniform grid of square cells.
+ * 
+ * Each object is registered in all cells its rectangle overlaps, so a point
+ * query touches only one cell. The cell size should be roughly the size of
+ * a typical object. Objects covering too many cells (e.g. a tile map of the
+ * whole world) are kept in a separate list checked by every query instead.
+ * @author Matúš Sulír
+ */
+public class GridIndex implements SpatialIndex {
+    private static final int MAX_OBJECT_CELLS = 64;
+    
+    private int cellSize;
+    private Map<Long, List<GraphicObject>> cells = new HashMap<Long, List<GraphicObject>>();
+    private Map<GraphicObject, Rectangle> areas = new IdentityHashMap<GraphicObject, Rectangle>();
+    private Set<GraphicObject> oversized = Collections.newSetFromMap(new IdentityHashMap<GraphicObject, Boolean>());
+    
+    /**
+     * Constructs a grid index with 64x64 px cells.
+     */
+    public GridIndex() {
+        this(64);
+    }
+    
+    /**
+     * Constructs a grid index with a custom cell size.
+     * @param cellSize the width and height of one cell in pixels
+     */
+    public GridIndex(int cellSize) {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException("The cell size must be positive");
+        
+        this.cellSize = cellSize;
+    }
+    
+    @Override
+    public void update(GraphicObject object, Rectangle area) {
+        Rectangle oldArea = areas.get(object);
+        
+        if (oldArea != null) {
+            if (sameCells(oldArea, area)) {
+                oldArea.setBounds(area);
+                return;
+            }
+            
+            unregister(object, oldArea);
+        }
+        
+        Rectangle newArea = new Rectangle(area);
+        areas.put(object, newArea);
+        register(object, newArea);
+    }
+
+    @Override
+    public void remove(GraphicObject object) {
+        Rectangle area = areas.remove(object);
+        
+        if (area != null)
+            unregister(object, area);
+    }
+
+    @Override
+    public void clear() {
+        cells.clear();
+        areas.clear();
+        oversized.clear();
+    }
+
+    @Override
+    public Collection<GraphicObject> objectsAt(int x, int y) {
+        List<GraphicObject> cell = cells.get(key(cell(x), cell(y)));
+        
+        if (cell == null && oversized.isEmpty())
+            return Collections.emptyList();
+        
+        List<GraphicObject> result = new ArrayList<GraphicObject>();
+        
+        if (cell != null) {
+            for (GraphicObject object : cell) {
+                if (contains(areas.get(object), x, y))
+                    result.add(object);
+            }
+        }
+        
+        for (GraphicObject object : oversized) {
+            if (contains(areas.get(object), x, y))
+                result.add(object);
+        }
+        
+        return result;
+    }
+
+    @Override
+    public Collection<GraphicObject> objectsIn(Rectangle area) {
+        if (area.isEmpty())
+            return Collections.emptyList();
+        
+        int minX = cell(area.x);
+        int maxX = cell(area.x + area.width - 1);
+        int minY = cell(area.y);
+        int maxY = cell(area.y + area.height - 1);
+        List<GraphicObject> result = new ArrayList<GraphicObject>();
+        
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > areas.size()) {
+            // visiting the cells would be slower than checking every object
+            for (Map.Entry<GraphicObject, Rectangle> entry : areas.entrySet()) {
+                if (intersects(entry.getValue(), area))
+                    result.add(entry.getKey());
+            }
+            
+            return result;
+        }
+        
+        for (GraphicObject object : oversized) {
+            if (intersects(areas.get(object), area))
+                result.add(object);
+        }
+        
+        Set<GraphicObject> found = Collections.newSetFromMap(new IdentityHashMap<GraphicObject, Boolean>());
+        
+        for (int cellY = minY; cellY <= maxY; cellY++) {
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                List<GraphicObject> cell = cells.get(key(cellX, cellY));
+                
+                if (cell != null) {
+                    for (GraphicObject object : cell) {
+                        if (intersects(areas.get(object), area) && found.add(object))
+                            result.add(object);
+                    }
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Registers the object in the cells covered by the area or, if there are
+     * too many of them, in the list of oversized objects.
+     * @param object the graphic object
+     * @param area the object's area
+     */
+    private void register(GraphicObject object, Rectangle area) {
+        if (isOversized(area))
+            oversized.add(object);
+        else
+            addToCells(object, area);
+    }
+    
+    /**
+     * Unregisters the object registered with the given area.
+     * @param object the graphic object
+     * @param area the object's area
+     */
+    private void unregister(GraphicObject object, Rectangle area) {
+        if (isOversized(area))
+            oversized.remove(object);
+        else
+            removeFromCells(object, area);
+    }
+    
+    /**
+     * Finds out whether the area covers too many cells to register an object
+     * in each of them.
+     * @param area the object's area
+     * @return true if the object should be kept in the oversized list
+     */
+    private boolean isOversized(Rectangle area) {
+        long columns = (long) lastCell(area.x, area.width) - cell(area.x) + 1;
+        long rows = (long) lastCell(area.y, area.height) - cell(area.y) + 1;
+        
+        return columns * rows > MAX_OBJECT_CELLS;
+    }
+    
+    /**
+     * Registers the object in all cells covered by the area.
+     * @param object the graphic object
+     * @param area the object's area
+     */
+    private void addToCells(GraphicObject object, Rectangle area) {
+        for (int cellY = cell(area.y); cellY <= lastCell(area.y, area.height); cellY++) {
+            for (int cellX = cell(area.x); cellX <= lastCell(area.x, area.width); cellX++) {
+                Long key = key(cellX, cellY);
+                List<GraphicObject> cell = cells.get(key);
+                
+                if (cell == null) {
+                    cell = new ArrayList<GraphicObject>(4);
+                    cells.put(key, cell);
+                }
+                
+                cell.add(object);
+            }
+        }
+    }
+    
+    /**
+     * Unregisters the object from all cells covered by the area.
+     * @param object the graphic object
+     * @param area the object's area
+     */
+    private void removeFromCells(GraphicObject object, Rectangle area) {
+        for (int cellY = cell(area.y); cellY <= lastCell(area.y, area.height); cellY++) {
+            for (int cellX = cell(area.x); cellX <= lastCell(area.x, area.width); cellX++) {
+                Long key = key(cellX, cellY);
+                List<GraphicObject> cell = cells.get(key);
+                
+                if (cell != null) {
+                    for (int i = 0; i < cell.size(); i++) {
+                        if (cell.get(i) == object) {
+                            cell.set(i, cell.get(cell.size() - 1));
+                            cell.remove(cell.size() - 1);
+                            break;
+                        }
+                    }
+                    
+                    if (cell.isEmpty())
+                        cells.remove(key);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds out whether two areas occupy exactly the same cells.
+     * @param first the first area
+     * @param second the second area
+     * @return true if the cells are the same, false otherwise
+     */
+    private boolean sameCells(Rectangle first, Rectangle second) {
+        return cell(first.x) == cell(second.x) && cell(first.y) == cell(second.y)
+                && lastCell(first.x, first.width) == lastCell(second.x, second.width)
+                && lastCell(first.y, first.height) == lastCell(second.y, second.height);
+    }
+    
+    /**
+     * Finds out whether the object's area contains the given point.
+     * @param objectArea the object's area
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return true if the point is inside, false otherwise
+     */
+    private static boolean contains(Rectangle objectArea, int x, int y) {
+        return x >= objectArea.x && x < objectArea.x + objectArea.width
+                && y >= objectArea.y && y < objectArea.y + objectArea.height;
+    }
+    
+    /**
+     * Finds out whether the object's area intersects the given rectangle.
+     * 
+     * Unlike <code>Rectangle.intersects()</code>, an empty object area
+     * located inside the rectangle is considered intersecting.
+     * @param objectArea the object's area
+     * @param area the rectangle
+     * @return true if they intersect, false otherwise
+     */
+    private boolean intersects(Rectangle objectArea, Rectangle area) {
+        return objectArea.x < area.x + area.width && area.x < objectArea.x + Math.max(objectArea.width, 1)
+                && objectArea.y < area.y + area.height && area.y < objectArea.y + Math.max(objectArea.height, 1);
+    }
+    
+    /**
+     * Returns the cell coordinate containing the given board coordinate.
+     * @param coordinate the x or y board coordinate
+     * @return the cell coordinate
+     */
+    private int cell(int coordinate) {
+        int cell = coordinate / cellSize;
+        
+        return (coordinate % cellSize < 0) ? cell - 1 : cell;
+    }
+    
+    /**
+     * Returns the last cell coordinate covered by a span.
+     * 
+     * Empty spans occupy the cell of their starting coordinate.
+     * @param start the starting coordinate
+     * @param length the span length (width or height)
+     * @return the cell coordinate
+     */
+    private int lastCell(int start, int length) {
+        return cell(start + Math.max(length, 1) - 1);
+    }
+    
+    /**
+     * Combines two cell coordinates into one hash key.
+     * @param cellX the x cell coordinate
+     * @param cellY the y cell coordinate
+     * @return the key
+     */
+    private static Long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
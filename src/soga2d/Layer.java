@@ -0,0 +1,257 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * A named layer of a graphic board.
+ * 
+ * Each layer has its own z-ordered list of objects. All objects of a layer
+ * are drawn in front of the objects of the layers behind it.
+ * 
+ * A layer containing mostly static objects (e.g. a background) can be
+ * cached: its objects are then drawn into a raster of the board's size,
+ * which is redrawn only in the areas where an object of this layer changed.
+ * Painting such a layer is then just one image copy. When the camera
+ * scrolls, the raster is shifted and only the uncovered strips are redrawn.
+ * @author Matúš Sulír
+ * @see GraphicBoard#addLayer(String)
+ */
+public class Layer {
+    private final String name;
+    private final ZOrderList objects = new ZOrderList();
+    private int depth;
+    private boolean cached = false;
+    private BufferedImage raster;
+    private Viewport rasterViewport;
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+    
+    /**
+     * Constructs an empty, uncached layer.
+     * @param name the layer name
+     */
+    Layer(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Returns the name of this layer.
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Enables or disables the cached raster of this layer.
+     * 
+     * The raster takes 4 bytes per pixel of the board.
+     * @param cached true to cache the layer, false to draw its objects
+     * directly
+     */
+    public synchronized void setCached(boolean cached) {
+        this.cached = cached;
+        raster = null;
+        dirtyRegion.flush();
+    }
+    
+    /**
+     * Finds out whether this layer is cached.
+     * @return true if the layer has a cached raster, false otherwise
+     */
+    public synchronized boolean isCached() {
+        return cached;
+    }
+    
+    /**
+     * Returns the objects of this layer.
+     * @return the list of objects sorted by the z-order (the backmost first)
+     */
+    public List<GraphicObject> getObjects() {
+        return objects.toList();
+    }
+    
+    /**
+     * Returns the number of objects in this layer.
+     * @return the object count
+     */
+    public int getObjectCount() {
+        return objects.size();
+    }
+    
+    /**
+     * Returns the z-ordered list of objects.
+     * @return the list of objects
+     */
+    ZOrderList objects() {
+        return objects;
+    }
+    
+    /**
+     * Returns the position of this layer on the board.
+     * @return the layer index (the backmost is 0)
+     */
+    int getDepth() {
+        return depth;
+    }
+    
+    /**
+     * Sets the position of this layer on the board.
+     * @param depth the layer index (the backmost is 0)
+     */
+    void setDepth(int depth) {
+        this.depth = depth;
+    }
+    
+    /**
+     * Marks the area of the cached raster as invalid.
+     * @param area the area in the world coordinates to redraw before the next
+     * paint
+     */
+    synchronized void invalidate(Rectangle area) {
+        if (cached && raster != null)
+            dirtyRegion.add(area);
+    }
+    
+    /**
+     * Marks the whole cached raster as invalid.
+     */
+    synchronized void invalidateAll() {
+        raster = null;
+        dirtyRegion.flush();
+    }
+    
+    /**
+     * Redraws the invalid areas of the cached raster and copies it to the
+     * graphics.
+     * 
+     * The raster contains the visible part of the world, in the screen
+     * coordinates.
+     * @param g the graphics to draw on, in the screen coordinates
+     * @param width the board width
+     * @param height the board height
+     * @param index the spatial index of the board
+     * @param viewport the current camera of the board
+     * @return the number of objects redrawn into the raster
+     */
+    int paintCached(Graphics2D g, int width, int height, SpatialIndex index, Viewport viewport) {
+        BufferedImage currentRaster;
+        List<Rectangle> areas;
+        
+        synchronized (this) {
+            Rectangle screen = new Rectangle(Math.max(width, 1), Math.max(height, 1));
+            
+            if (raster == null || raster.getWidth() != screen.width || raster.getHeight() != screen.height) {
+                raster = new BufferedImage(screen.width, screen.height, BufferedImage.TYPE_INT_ARGB);
+                dirtyRegion.flush();
+                dirtyRegion.add(viewport.toWorld(screen));
+            } else if (!viewport.equals(rasterViewport)) {
+                scroll(viewport, screen);
+            }
+            
+            rasterViewport = viewport;
+            currentRaster = raster;
+            areas = dirtyRegion.flush();
+        }
+        
+        int drawn = 0;
+        
+        if (!areas.isEmpty()) {
+            Graphics2D rasterGraphics = currentRaster.createGraphics();
+            Composite composite = rasterGraphics.getComposite();
+            AffineTransform identity = rasterGraphics.getTransform();
+            AffineTransform world = viewport.getTransform();
+            
+            for (Rectangle area : areas) {
+                Rectangle screenArea = viewport.toScreen(area).intersection(new Rectangle(currentRaster.getWidth(), currentRaster.getHeight()));
+                
+                if (screenArea.isEmpty())
+                    continue;
+                
+                rasterGraphics.setTransform(identity);
+                rasterGraphics.setClip(screenArea);
+                rasterGraphics.setComposite(AlphaComposite.Clear);
+                rasterGraphics.fill(screenArea);
+                rasterGraphics.setComposite(composite);
+                rasterGraphics.transform(world);
+                
+                for (GraphicObject object : objects.sort(index.objectsIn(viewport.toWorld(screenArea)))) {
+                    object.draw(rasterGraphics, false, false);
+                    drawn++;
+                }
+            }
+            
+            rasterGraphics.dispose();
+        }
+        
+        g.drawImage(currentRaster, 0, 0, null);
+        return drawn;
+    }
+    
+    /**
+     * Moves the content of the raster after the camera moved and marks the
+     * uncovered strips as invalid.
+     * 
+     * If the zoom changed or the content moved out of the raster, the
+     * whole raster is invalidated.
+     * @param viewport the new camera
+     * @param screen the raster bounds
+     */
+    private void scroll(Viewport viewport, Rectangle screen) {
+        int deltaX = rasterViewport.getX() - viewport.getX();
+        int deltaY = rasterViewport.getY() - viewport.getY();
+        
+        if (!viewport.isUnscaled() || !rasterViewport.isUnscaled()
+                || Math.abs(deltaX) >= screen.width || Math.abs(deltaY) >= screen.height) {
+            dirtyRegion.flush();
+            dirtyRegion.add(viewport.toWorld(screen));
+            return;
+        }
+        
+        Graphics2D rasterGraphics = raster.createGraphics();
+        rasterGraphics.setComposite(AlphaComposite.Src);
+        rasterGraphics.copyArea(0, 0, screen.width, screen.height, deltaX, deltaY);
+        rasterGraphics.dispose();
+        
+        int keptLeft = Math.max(deltaX, 0);
+        int keptWidth = screen.width - Math.abs(deltaX);
+        
+        if (deltaX > 0)
+            dirtyRegion.add(viewport.toWorld(new Rectangle(0, 0, deltaX, screen.height)));
+        else if (deltaX < 0)
+            dirtyRegion.add(viewport.toWorld(new Rectangle(keptWidth, 0, -deltaX, screen.height)));
+        
+        if (deltaY > 0)
+            dirtyRegion.add(viewport.toWorld(new Rectangle(keptLeft, 0, keptWidth, deltaY)));
+        else if (deltaY < 0)
+            dirtyRegion.add(viewport.toWorld(new Rectangle(keptLeft, screen.height + deltaY, keptWidth, -deltaY)));
+    }
+}
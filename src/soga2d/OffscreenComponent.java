@@ -0,0 +1,143 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * The offscreen image containing the graphic board.
+ * 
+ * It does not need any display or AWT event queue, so it can be used to
+ * simulate and render boards on headless servers, e.g. to create thumbnails
+ * or screenshots for regression tests. Requested repaints are only
+ * remembered; they are applied to the frame when <code>render()</code> is
+ * called.
+ * @author Matúš Sulír
+ */
+public class OffscreenComponent implements GraphicComponent {
+    private GraphicBoard board;
+    private BufferedImage frame;
+    private Color background;
+    private DirtyRegion dirtyRegion = new DirtyRegion();
+    
+    /**
+     * Constructs an offscreen component with a transparent background.
+     * @param width the frame width
+     * @param height the frame height
+     */
+    public OffscreenComponent(int width, int height) {
+        this(width, height, new Color(0, 0, 0, 0));
+    }
+    
+    /**
+     * Constructs an offscreen component with a custom background.
+     * @param width the frame width
+     * @param height the frame height
+     * @param background the background color
+     */
+    public OffscreenComponent(int width, int height, Color background) {
+        this.frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.background = background;
+        board = new GraphicBoard(this);
+        
+        dirtyRegion.add(new Rectangle(width, height));
+    }
+    
+    /**
+     * Returns the associated graphic board.
+     * @return the board
+     */
+    public GraphicBoard getBoard() {
+        return board;
+    }
+    
+    /**
+     * Returns the width of the frame.
+     * @return the width in pixels
+     */
+    @Override
+    public int getWidth() {
+        return frame.getWidth();
+    }
+    
+    /**
+     * Returns the height of the frame.
+     * @return the height in pixels
+     */
+    @Override
+    public int getHeight() {
+        return frame.getHeight();
+    }
+    
+    /**
+     * Remembers the area to be repainted on the next <code>render()</code>
+     * call.
+     * @param area the rectangle to repaint
+     */
+    @Override
+    public synchronized void repaint(Rectangle area) {
+        dirtyRegion.add(area.intersection(new Rectangle(getWidth(), getHeight())));
+    }
+    
+    /**
+     * Repaints all areas requested since the last call and returns the frame.
+     * 
+     * The returned image is the internal buffer, updated by each subsequent
+     * call; copy it if it should be kept.
+     * @return the current frame
+     */
+    public synchronized BufferedImage render() {
+        // the changes applied at the start of painting can request new repaints
+        for (int pass = 0; pass < 2 && !dirtyRegion.isEmpty(); pass++) {
+            for (Rectangle area : dirtyRegion.flush()) {
+                Graphics2D g = frame.createGraphics();
+                
+                try {
+                    g.clip(area);
+                    g.setComposite(AlphaComposite.Src);
+                    g.setColor(background);
+                    g.fill(area);
+                    g.setComposite(AlphaComposite.SrcOver);
+                    board.paint(g);
+                } finally {
+                    g.dispose();
+                }
+            }
+        }
+        
+        return frame;
+    }
+    
+    /**
+     * Returns the frame as it was after the last <code>render()</code> call.
+     * @return the current frame
+     */
+    public synchronized BufferedImage getFrame() {
+        return frame;
+    }
+}
@@ -23,7 +23,6 @@
  */
 package soga2d;
 
-import java.awt.Point;
 import soga2d.events.ProximityListener;
 
 /**
@@ -35,15 +34,19 @@ public class ProximityDetector implements Detector {
 
     /**
      * The type of the distance to measure.
-     * 
-     * Currently only one type is supported.
      */
     public enum DistanceType {
         /**
          * The distance will be measured from the center of the first
          * rectangle to the center of the second rectangle.
          */
-        CENTER_TO_CENTER
+        CENTER_TO_CENTER,
+        
+        /**
+         * The distance will be measured between the nearest edges of the
+         * rectangles; it is zero if they touch or overlap.
+         */
+        EDGE_TO_EDGE
     }
     
     private GraphicObject first;
@@ -72,16 +75,39 @@ public class ProximityDetector implements Detector {
      * @return true if they are in proximity, false otherwise
      */
     public boolean objectsNear() {
-        if (distanceType == DistanceType.CENTER_TO_CENTER) {
-            Point firstCenter = getCenter(first);
-            Point secondCenter = getCenter(second);
-            int centerDistance = (int) firstCenter.distance(secondCenter);
-            
-            if (centerDistance <= distance)
-                return true;
+        return objectsNear(first, second, distance, distanceType);
+    }
+    
+    /**
+     * Finds out whether two objects are in proximity.
+     * 
+     * The distance is truncated to whole pixels. Squared distances are
+     * compared, so no objects are allocated and no square root is computed.
+     * @param first the first object
+     * @param second the second object
+     * @param distance the maximum distance (inclusive)
+     * @param distanceType how to measure the distance
+     * @return true if they are in proximity, false otherwise
+     */
+    static boolean objectsNear(GraphicObject first, GraphicObject second, int distance, DistanceType distanceType) {
+        if (distance < 0)
+            return false;
+        
+        long deltaX;
+        long deltaY;
+        
+        if (distanceType == DistanceType.EDGE_TO_EDGE) {
+            deltaX = Math.max(0, Math.max(first.getX() - (second.getX() + second.getWidth()),
+                    second.getX() - (first.getX() + first.getWidth())));
+            deltaY = Math.max(0, Math.max(first.getY() - (second.getY() + second.getHeight()),
+                    second.getY() - (first.getY() + first.getHeight())));
+        } else {
+            deltaX = (first.getX() + first.getWidth() / 2) - (second.getX() + second.getWidth() / 2);
+            deltaY = (first.getY() + first.getHeight() / 2) - (second.getY() + second.getHeight() / 2);
         }
         
-        return false;
+        long limit = distance + 1L;
+        return deltaX * deltaX + deltaY * deltaY < limit * limit;
     }
     
     /**
@@ -112,16 +138,4 @@ public class ProximityDetector implements Detector {
             wereNear = areNear;
         }
     }
-    
-    /**
-     * Returns the central point of the rectangle.
-     * @param rectangle the rectangle
-     * @return the central point
-     */
-    private Point getCenter(GraphicObject rectangle) {
-        int x = rectangle.getX() + rectangle.getWidth() / 2;
-        int y = rectangle.getY() + rectangle.getHeight() / 2;
-        
-        return new Point(x, y);
-    }
 }
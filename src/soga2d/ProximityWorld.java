@@ -0,0 +1,260 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import soga2d.ProximityDetector.DistanceType;
+import soga2d.events.ProximityListener;
+
+/**
+ * The proximity world detects when any objects added to it come near each
+ * other.
+ * 
+ * An object can watch its surroundings within a given radius. Its listener
+ * is then notified each time another object of the world comes into this
+ * radius. Objects are found using a spatial index of the rectangles extended
+ * by the radius and distances are compared squared, so only the objects in
+ * the neighborhood are measured and no square roots are computed.
+ * 
+ * Each graphic board has its own proximity world.
+ * @author Matúš Sulír
+ * @see GraphicBoard#getProximityWorld()
+ */
+public class ProximityWorld {
+    private SpatialIndex objects = new GridIndex();
+    private SpatialIndex areas = new GridIndex();
+    private Map<GraphicObject, Member> members = new IdentityHashMap<GraphicObject, Member>();
+    
+    /**
+     * Constructs an empty proximity world.
+     */
+    ProximityWorld() { }
+    
+    /**
+     * Adds an object which does not watch its surroundings.
+     * 
+     * Other objects can still detect it when it comes near them.
+     * @param object the graphic object
+     */
+    public void addObject(GraphicObject object) {
+        addObject(object, 0, DistanceType.CENTER_TO_CENTER, null);
+    }
+    
+    /**
+     * Adds an object watching its surroundings to the world.
+     * 
+     * The listener is notified once each time another object of the world
+     * comes into the radius. Adding an already present object replaces its
+     * radius and listener; the objects already near it are then reported
+     * again.
+     * @param object the graphic object
+     * @param radius the maximum distance (inclusive)
+     * @param distanceType how to measure the distance
+     * @param listener the proximity listener (can be null)
+     */
+    public void addObject(GraphicObject object, int radius, DistanceType distanceType, ProximityListener listener) {
+        Member member = members.get(object);
+        
+        if (member == null) {
+            member = new Member(object);
+            members.put(object, member);
+            object.addDetector(member);
+        } else {
+            forgetNeighbors(member);
+            areas.remove(object);
+        }
+        
+        member.radius = radius;
+        member.distanceType = distanceType;
+        member.listener = listener;
+        member.objectChanged();
+    }
+    
+    /**
+     * Removes the object from the world.
+     * @param object the graphic object
+     */
+    public void removeObject(GraphicObject object) {
+        Member member = members.remove(object);
+        
+        if (member != null) {
+            object.removeDetector(member);
+            objects.remove(object);
+            areas.remove(object);
+            forgetNeighbors(member);
+            
+            for (Member watcher : member.watchers)
+                watcher.near.remove(member);
+            
+            member.watchers.clear();
+        }
+    }
+    
+    /**
+     * Removes all objects from the world.
+     */
+    public void clear() {
+        for (Member member : members.values())
+            member.object.removeDetector(member);
+        
+        members.clear();
+        objects.clear();
+        areas.clear();
+    }
+    
+    /**
+     * Returns all objects in the world which are near the given object.
+     * @param object the graphic object (does not need to be in the world)
+     * @param radius the maximum distance (inclusive)
+     * @param distanceType how to measure the distance
+     * @return the list of nearby objects
+     */
+    public List<GraphicObject> getObjectsNear(GraphicObject object, int radius, DistanceType distanceType) {
+        List<GraphicObject> result = new ArrayList<GraphicObject>();
+        
+        for (GraphicObject candidate : objects.objectsIn(searchArea(object, radius))) {
+            if (candidate != object && ProximityDetector.objectsNear(object, candidate, radius, distanceType))
+                result.add(candidate);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Updates the indexes after a member changed and notifies the listeners
+     * of the objects which came near another object.
+     * @param member the changed member
+     */
+    private void memberChanged(Member member) {
+        GraphicObject object = member.object;
+        Rectangle rectangle = object.getRectangle();
+        List<ProximityListener> notified = new ArrayList<ProximityListener>();
+        
+        objects.update(object, rectangle);
+        
+        if (member.listener != null) {
+            Rectangle area = searchArea(object, member.radius);
+            areas.update(object, area);
+            
+            for (Member other : new ArrayList<Member>(member.near))
+                measure(member, other, notified);
+            
+            for (GraphicObject candidate : objects.objectsIn(area)) {
+                Member other = members.get(candidate);
+                
+                if (other != null && other != member)
+                    measure(member, other, notified);
+            }
+        }
+        
+        for (Member watcher : new ArrayList<Member>(member.watchers))
+            measure(watcher, member, notified);
+        
+        for (GraphicObject candidate : areas.objectsIn(rectangle)) {
+            Member watcher = members.get(candidate);
+            
+            if (watcher != null && watcher != member)
+                measure(watcher, member, notified);
+        }
+        
+        for (ProximityListener listener : notified)
+            listener.onProximity();
+    }
+    
+    /**
+     * Finds out whether an object is near a watching object and records the
+     * change.
+     * @param watcher the member watching its surroundings
+     * @param other the other member
+     * @param notified the list to which the watcher's listener is added if
+     * the other object has just come near
+     */
+    private void measure(Member watcher, Member other, List<ProximityListener> notified) {
+        if (watcher.listener == null)
+            return;
+        
+        boolean near = ProximityDetector.objectsNear(watcher.object, other.object, watcher.radius, watcher.distanceType);
+        
+        if (near && watcher.near.add(other)) {
+            other.watchers.add(watcher);
+            notified.add(watcher.listener);
+        } else if (!near && watcher.near.remove(other)) {
+            other.watchers.remove(watcher);
+        }
+    }
+    
+    /**
+     * Clears the set of objects near the member.
+     * @param member the member
+     */
+    private void forgetNeighbors(Member member) {
+        for (Member other : member.near)
+            other.watchers.remove(member);
+        
+        member.near.clear();
+    }
+    
+    /**
+     * Returns the area in which the objects near the given one can be located.
+     * @param object the graphic object
+     * @param radius the maximum distance
+     * @return the rectangle of the object extended by the radius
+     */
+    private static Rectangle searchArea(GraphicObject object, int radius) {
+        Rectangle area = object.getRectangle();
+        int margin = Math.max(radius, 0) + 1;
+        area.grow(margin, margin);
+        
+        return area;
+    }
+    
+    /**
+     * The detector registered on each object in the world.
+     */
+    private class Member implements Detector {
+        private GraphicObject object;
+        private int radius;
+        private DistanceType distanceType;
+        private ProximityListener listener;
+        private Set<Member> near = Collections.newSetFromMap(new IdentityHashMap<Member, Boolean>());
+        private Set<Member> watchers = Collections.newSetFromMap(new IdentityHashMap<Member, Boolean>());
+        
+        Member(GraphicObject object) {
+            this.object = object;
+        }
+        
+        @Override
+        public void objectChanged() {
+            // a notification deferred by a locked board can come after removal
+            if (members.get(object) == this)
+                memberChanged(this);
+        }
+    }
+}
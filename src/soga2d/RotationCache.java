@@ -0,0 +1,158 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The shared cache of rotated images.
+ * 
+ * Rotated images are keyed by the source image (compared by identity) and
+ * the angle. When the total size of the cached images exceeds the limit,
+ * the least recently used ones are evicted.
+ * @author Matúš Sulír
+ */
+class RotationCache {
+    private static final long MAX_PIXELS = 16 * 1024 * 1024;
+    private static final Map<Key, BufferedImage> images = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+    private static long pixels = 0;
+    
+    /**
+     * This class contains only static methods.
+     */
+    private RotationCache() { }
+    
+    /**
+     * Returns the source image rotated clockwise around its center.
+     * 
+     * The returned image is shared and must not be modified.
+     * @param source the source image
+     * @param angle the angle in degrees
+     * @return the rotated image of the same size as the source
+     */
+    static synchronized BufferedImage getRotated(BufferedImage source, int angle) {
+        angle = ((angle % 360) + 360) % 360;
+        
+        if (angle == 0)
+            return source;
+        
+        Key key = new Key(source, angle);
+        BufferedImage rotated = images.get(key);
+        
+        if (rotated == null) {
+            rotated = rotate(source, angle);
+            images.put(key, rotated);
+            pixels += size(rotated);
+            evict();
+        }
+        
+        return rotated;
+    }
+    
+    /**
+     * Removes all rotations of the source image, e.g. after the source was
+     * modified.
+     * @param source the source image
+     */
+    static synchronized void invalidate(BufferedImage source) {
+        for (Iterator<Map.Entry<Key, BufferedImage>> it = images.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, BufferedImage> entry = it.next();
+            
+            if (entry.getKey().source == source) {
+                pixels -= size(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Removes the least recently used images until the cache fits the limit.
+     */
+    private static void evict() {
+        Iterator<BufferedImage> it = images.values().iterator();
+        
+        while (pixels > MAX_PIXELS && it.hasNext()) {
+            pixels -= size(it.next());
+            it.remove();
+        }
+    }
+    
+    /**
+     * Draws the rotated image.
+     * @param source the source image
+     * @param angle the angle in degrees
+     * @return the new image
+     */
+    private static BufferedImage rotate(BufferedImage source, int angle) {
+        int type = (source.getType() == BufferedImage.TYPE_CUSTOM) ? BufferedImage.TYPE_INT_ARGB : source.getType();
+        BufferedImage rotated = new BufferedImage(source.getWidth(), source.getHeight(), type);
+        Graphics2D g = rotated.createGraphics();
+        
+        g.rotate(Math.toRadians(angle), source.getWidth() / 2, source.getHeight() / 2);
+        g.drawImage(source, null, 0, 0);
+        g.dispose();
+        
+        return rotated;
+    }
+    
+    /**
+     * Returns the number of pixels of the image.
+     * @param image the image
+     * @return the width multiplied by the height
+     */
+    private static long size(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+    
+    /**
+     * The cache key - a source image and an angle.
+     */
+    private static class Key {
+        private BufferedImage source;
+        private int angle;
+        
+        Key(BufferedImage source, int angle) {
+            this.source = source;
+            this.angle = angle;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key))
+                return false;
+            
+            Key other = (Key) object;
+            return source == other.source && angle == other.angle;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(source) + angle;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Rectangle;
+import java.util.Collection;
+
+/**
+ * The spatial index keeps track of the areas occupied by graphic objects and
+ * quickly finds the objects located at a given point or in a given area.
+ * 
+ * The index does not know anything about the z-order. Query results are only
+ * candidates in an unspecified order - the graphic board is responsible for
+ * sorting them.
+ * @author Matúš Sulír
+ */
+public interface SpatialIndex {
+    /**
+     * Inserts the object into the index or updates its area if it is
+     * already indexed.
+     * @param object the graphic object
+     * @param area the rectangle occupied by the object
+     */
+    void update(GraphicObject object, Rectangle area);
+    
+    /**
+     * Removes the object from the index.
+     * @param object the graphic object
+     */
+    void remove(GraphicObject object);
+    
+    /**
+     * Removes all objects from the index.
+     */
+    void clear();
+    
+    /**
+     * Returns all objects whose area contains the given point.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the collection of objects (possibly empty)
+     */
+    Collection<GraphicObject> objectsAt(int x, int y);
+    
+    /**
+     * Returns all objects whose area intersects the given rectangle.
+     * @param area the rectangle
+     * @return the collection of objects (possibly empty)
+     */
+    Collection<GraphicObject> objectsIn(Rectangle area);
+}
@@ -0,0 +1,169 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+
+/**
+ * The camera position and zoom of a graphic board.
+ * 
+ * The viewport converts between the world coordinates, in which the objects
+ * are located, and the screen coordinates of the component. The instances
+ * are immutable.
+ * @author Matúš Sulír
+ */
+class Viewport {
+    private final int x;
+    private final int y;
+    private final double zoom;
+    
+    /**
+     * Constructs a viewport.
+     * @param x the world x coordinate displayed at the left edge
+     * @param y the world y coordinate displayed at the top edge
+     * @param zoom the number of screen pixels per world pixel
+     */
+    Viewport(int x, int y, double zoom) {
+        this.x = x;
+        this.y = y;
+        this.zoom = zoom;
+    }
+    
+    /**
+     * Returns the world x coordinate displayed at the left edge.
+     * @return the x coordinate
+     */
+    int getX() {
+        return x;
+    }
+    
+    /**
+     * Returns the world y coordinate displayed at the top edge.
+     * @return the y coordinate
+     */
+    int getY() {
+        return y;
+    }
+    
+    /**
+     * Returns the number of screen pixels per world pixel.
+     * @return the zoom
+     */
+    double getZoom() {
+        return zoom;
+    }
+    
+    /**
+     * Finds out whether the world is displayed without any scaling.
+     * @return true if the zoom is 1, false otherwise
+     */
+    boolean isUnscaled() {
+        return zoom == 1;
+    }
+    
+    /**
+     * Returns the transformation from the world to the screen coordinates.
+     * @return the new transformation
+     */
+    AffineTransform getTransform() {
+        AffineTransform transform = AffineTransform.getScaleInstance(zoom, zoom);
+        transform.translate(-x, -y);
+        
+        return transform;
+    }
+    
+    /**
+     * Converts a point on the screen to the world coordinates.
+     * @param screenX the x coordinate on the screen
+     * @param screenY the y coordinate on the screen
+     * @return the point in the world
+     */
+    Point toWorld(int screenX, int screenY) {
+        if (isUnscaled())
+            return new Point(screenX + x, screenY + y);
+        
+        return new Point((int) Math.floor(screenX / zoom) + x, (int) Math.floor(screenY / zoom) + y);
+    }
+    
+    /**
+     * Converts a point in the world to the screen coordinates.
+     * @param worldX the x coordinate in the world
+     * @param worldY the y coordinate in the world
+     * @return the point on the screen
+     */
+    Point toScreen(int worldX, int worldY) {
+        return new Point((int) Math.floor((worldX - x) * zoom), (int) Math.floor((worldY - y) * zoom));
+    }
+    
+    /**
+     * Returns the smallest screen rectangle covering the world area.
+     * @param area the rectangle in the world
+     * @return the rectangle on the screen
+     */
+    Rectangle toScreen(Rectangle area) {
+        if (isUnscaled())
+            return new Rectangle(area.x - x, area.y - y, area.width, area.height);
+        
+        int left = (int) Math.floor((area.x - x) * zoom);
+        int top = (int) Math.floor((area.y - y) * zoom);
+        int right = (int) Math.ceil(((double) area.x + area.width - x) * zoom);
+        int bottom = (int) Math.ceil(((double) area.y + area.height - y) * zoom);
+        
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+    
+    /**
+     * Returns the smallest world rectangle covering the screen area.
+     * @param area the rectangle on the screen
+     * @return the rectangle in the world
+     */
+    Rectangle toWorld(Rectangle area) {
+        if (isUnscaled())
+            return new Rectangle(area.x + x, area.y + y, area.width, area.height);
+        
+        int left = (int) Math.floor(area.x / zoom) + x;
+        int top = (int) Math.floor(area.y / zoom) + y;
+        int right = (int) Math.ceil(((double) area.x + area.width) / zoom) + x;
+        int bottom = (int) Math.ceil(((double) area.y + area.height) / zoom) + y;
+        
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+    
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Viewport))
+            return false;
+        
+        Viewport other = (Viewport) object;
+        return x == other.x && y == other.y && zoom == other.zoom;
+    }
+    
+    @Override
+    public int hashCode() {
+        long zoomBits = Double.doubleToLongBits(zoom);
+        return 31 * (31 * x + y) + (int) (zoomBits ^ (zoomBits >>> 32));
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The list of graphic objects ordered along the Z-axis.
+ * 
+ * The objects form a doubly linked list and each of them has a numeric key
+ * which grows from the back to the front. New keys are chosen in the gaps
+ * between the neighbors. When a gap is exhausted, only the keys in the
+ * smallest surrounding key range which is sparse enough are spread evenly
+ * again, so repeated insertions at one place cost amortized O(log n). An
+ * identity map finds the node of an object, so membership tests and
+ * removals take constant time and any subset of objects can be sorted by
+ * the keys without walking the whole list.
+ * @author Matúš Sulír
+ */
+class ZOrderList {
+    private static final long GAP = 1L << 20;
+    
+    private final Map<GraphicObject, Node> nodes = new IdentityHashMap<GraphicObject, Node>();
+    private Node first;
+    private Node last;
+    
+    /**
+     * Finds out whether the object is in this list.
+     * @param object the graphic object
+     * @return true if the object is present, false otherwise
+     */
+    boolean contains(GraphicObject object) {
+        return nodes.containsKey(object);
+    }
+    
+    /**
+     * Returns the number of objects.
+     * @return the size of the list
+     */
+    int size() {
+        return nodes.size();
+    }
+    
+    /**
+     * Returns the key of the object; a greater key means closer to the front.
+     * @param object the graphic object contained in this list
+     * @return the key
+     */
+    long keyOf(GraphicObject object) {
+        return nodes.get(object).key;
+    }
+    
+    /**
+     * Adds the object in front of all other objects, or moves it there if it
+     * is already present.
+     * @param object the graphic object
+     */
+    void addLast(GraphicObject object) {
+        remove(object);
+        
+        if (last != null && last.key > Long.MAX_VALUE - GAP)
+            renumber();
+        
+        Node node = new Node(object, (last == null) ? 0 : last.key + GAP);
+        link(node, last, null);
+    }
+    
+    /**
+     * Adds the object behind all other objects, or moves it there if it is
+     * already present.
+     * @param object the graphic object
+     */
+    void addFirst(GraphicObject object) {
+        remove(object);
+        
+        if (first != null && first.key < Long.MIN_VALUE + GAP)
+            renumber();
+        
+        Node node = new Node(object, (first == null) ? 0 : first.key - GAP);
+        link(node, null, first);
+    }
+    
+    /**
+     * Adds the object directly in front of another object, or moves it there
+     * if it is already present.
+     * @param object the graphic object
+     * @param behind the object contained in this list which will be directly
+     * behind the first one
+     */
+    void addAfter(GraphicObject object, GraphicObject behind) {
+        if (object == behind)
+            return;
+        
+        remove(object);
+        Node previous = nodes.get(behind);
+        
+        if (previous.next == null) {
+            addLast(object);
+            return;
+        }
+        
+        if (previous.next.key - previous.key < 2)
+            relabelAround(previous);
+        
+        Node node = new Node(object, previous.key + (previous.next.key - previous.key) / 2);
+        link(node, previous, previous.next);
+    }
+    
+    /**
+     * Removes the object.
+     * @param object the graphic object
+     * @return true if the object was present, false otherwise
+     */
+    boolean remove(GraphicObject object) {
+        Node node = nodes.remove(object);
+        
+        if (node == null)
+            return false;
+        
+        if (node.previous == null)
+            first = node.next;
+        else
+            node.previous.next = node.next;
+        
+        if (node.next == null)
+            last = node.previous;
+        else
+            node.next.previous = node.previous;
+        
+        return true;
+    }
+    
+    /**
+     * Puts a new object to the position of an old one.
+     * @param oldObject the object contained in this list
+     * @param newObject the object not contained in this list
+     */
+    void replace(GraphicObject oldObject, GraphicObject newObject) {
+        Node node = nodes.remove(oldObject);
+        node.object = newObject;
+        nodes.put(newObject, node);
+    }
+    
+    /**
+     * Removes all objects.
+     */
+    void clear() {
+        nodes.clear();
+        first = null;
+        last = null;
+    }
+    
+    /**
+     * Returns all objects.
+     * @return the list sorted from the back to the front
+     */
+    List<GraphicObject> toList() {
+        List<GraphicObject> result = new ArrayList<GraphicObject>(nodes.size());
+        
+        for (Node node = first; node != null; node = node.next)
+            result.add(node.object);
+        
+        return result;
+    }
+    
+    /**
+     * Returns the objects of this list contained in the collection.
+     * @param candidates the objects (possibly also others)
+     * @return the list sorted from the back to the front
+     */
+    List<GraphicObject> sort(Collection<GraphicObject> candidates) {
+        Node[] selected = new Node[candidates.size()];
+        int count = 0;
+        
+        for (GraphicObject object : candidates) {
+            Node node = nodes.get(object);
+            
+            if (node != null)
+                selected[count++] = node;
+        }
+        
+        Arrays.sort(selected, 0, count);
+        List<GraphicObject> result = new ArrayList<GraphicObject>(count);
+        
+        for (int i = 0; i < count; i++)
+            result.add(selected[i].object);
+        
+        return result;
+    }
+    
+    /**
+     * Inserts the node between two neighbors.
+     * @param node the new node
+     * @param previous the node behind or null if the new one is the first
+     * @param next the node in front or null if the new one is the last
+     */
+    private void link(Node node, Node previous, Node next) {
+        node.previous = previous;
+        node.next = next;
+        
+        if (previous == null)
+            first = node;
+        else
+            previous.next = node;
+        
+        if (next == null)
+            last = node;
+        else
+            next.previous = node;
+        
+        nodes.put(node.object, node);
+    }
+    
+    /**
+     * Spreads the keys of the nodes near the given one, restoring the gaps
+     * between them.
+     * 
+     * The key ranges aligned to powers of two and containing the node are
+     * tried from the smallest one. The first range whose density is below
+     * a threshold decreasing with the range size is relabeled, so the
+     * relabeled nodes will have enough space for many more insertions.
+     * @param node the node whose gap to the next node is exhausted
+     */
+    private void relabelAround(Node node) {
+        for (int level = 2; level < 63; level++) {
+            long size = 1L << level;
+            long start = node.key & -size;
+            long end = start + (size - 1);
+            double maxCount = Math.min(Math.pow(4.0 / 3.0, level), size / 4);
+            
+            Node low = node;
+            Node high = node;
+            int count = 1;
+            
+            while (low.previous != null && low.previous.key >= start && count <= maxCount) {
+                low = low.previous;
+                count++;
+            }
+            
+            while (high.next != null && high.next.key <= end && count <= maxCount) {
+                high = high.next;
+                count++;
+            }
+            
+            if (count <= maxCount) {
+                long step = size / count;
+                long key = start + step / 2;
+                
+                for (Node current = low; current != high.next; current = current.next) {
+                    current.key = key;
+                    key += step;
+                }
+                
+                return;
+            }
+        }
+        
+        renumber();
+    }
+    
+    /**
+     * Spreads all keys evenly, restoring the gaps between them.
+     */
+    private void renumber() {
+        long key = -(nodes.size() / 2) * GAP;
+        
+        for (Node node = first; node != null; node = node.next) {
+            node.key = key;
+            key += GAP;
+        }
+    }
+    
+    /**
+     * One object and its key.
+     */
+    private static class Node implements Comparable<Node> {
+        private GraphicObject object;
+        private long key;
+        private Node previous;
+        private Node next;
+        
+        Node(GraphicObject object, long key) {
+            this.object = object;
+            this.key = key;
+        }
+        
+        @Override
+        public int compareTo(Node other) {
+            return (key < other.key) ? -1 : ((key == other.key) ? 0 : 1);
+        }
+    }
+}
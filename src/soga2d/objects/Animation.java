@@ -25,9 +25,9 @@ package soga2d.objects;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
+import soga2d.AnimationClock;
 import soga2d.GraphicObject;
+import soga2d.events.FrameListener;
 
 /**
  * The animation is displayed as a static image until the start() method is
@@ -41,8 +41,8 @@ public class Animation extends GraphicObject {
     private BufferedImage staticImage;
     private BufferedImage[] frames;
     private int index = 0;
-    private Timer timer;
-    private boolean active = false;
+    private AnimationClock clock = AnimationClock.getDefault();
+    private volatile boolean active = false;
 
     /**
      * Constructs an animation.
@@ -65,21 +65,57 @@ public class Animation extends GraphicObject {
         showImage(this.staticImage);
     }
 
+    /**
+     * Constructs an animation from already loaded images, e.g. from the
+     * images of a sprite atlas.
+     * @param interval the time between two frames, in milliseconds
+     * @param staticImage the static image to show when the animation is stopped
+     * @param images the animation images
+     * @see SpriteAtlas
+     */
+    public Animation(int interval, BufferedImage staticImage, BufferedImage... images) {
+        this.interval = interval;
+        this.staticImage = staticImage;
+        this.frames = images.clone();
+
+        showImage(this.staticImage);
+    }
+
+    /**
+     * Sets the clock which drives this animation.
+     * 
+     * By default, all animations share the default clock. A running
+     * animation continues on the new clock.
+     * @param clock the animation clock
+     */
+    public void setClock(AnimationClock clock) {
+        boolean wasActive = active;
+        
+        if (wasActive) {
+            active = false;
+            this.clock.remove(this);
+        }
+        
+        this.clock = clock;
+        
+        if (wasActive)
+            start();
+    }
+
     /**
      * Starts the animation.
      */
     public void start() {
         if (!active) {
             active = true;
-            timer = new Timer();
 
-            timer.scheduleAtFixedRate(new TimerTask() {
+            clock.add(this, interval, new FrameListener() {
 
                 @Override
-                public void run() {
+                public void onFrame() {
                     showNext();
                 }
-            }, 0, interval);
+            });
         }
     }
 
@@ -89,7 +125,7 @@ public class Animation extends GraphicObject {
     public void stop() {
         if (active) {
             active = false;
-            timer.cancel();
+            clock.remove(this);
 
             index = 0;
             showImage(staticImage);
@@ -100,6 +136,9 @@ public class Animation extends GraphicObject {
      * Shows the next animation frame.
      */
     private void showNext() {
+        if (!active)
+            return;
+        
         index = (index + 1) % frames.length;
         showImage(frames[index]);
     }
@@ -108,9 +147,14 @@ public class Animation extends GraphicObject {
      * Shows the specified image.
      * @param image the image to show
      */
-    private void showImage(BufferedImage image) {
-        beforeChange();
-        this.image = image;
-        afterChange();
+    private void showImage(final BufferedImage image) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                Animation.this.image = image;
+                afterChange();
+            }
+        });
     }
 }
@@ -0,0 +1,236 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d.objects;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import soga2d.AcceleratedImage;
+import soga2d.GraphicObject;
+
+/**
+ * The shared cache of decoded images.
+ * 
+ * Each image file is decoded only once, no matter how many graphic objects
+ * use it. The images are held by soft references, so they are evicted when
+ * the memory is low and no object uses them.
+ * 
+ * The cached images are shared and must not be modified.
+ * @author Matúš Sulír
+ */
+public final class ImageCache {
+    private static final Map<String, Entry> images = new HashMap<String, Entry>();
+    private static final ReferenceQueue<BufferedImage> collected = new ReferenceQueue<BufferedImage>();
+    private static long hits = 0;
+    private static long misses = 0;
+    private static volatile boolean convertToCompatible = false;
+    
+    /**
+     * This class contains only static methods.
+     */
+    private ImageCache() { }
+    
+    /**
+     * Returns the image from the classpath, decoding it only if it is not
+     * already cached.
+     * 
+     * The image is decoded outside of the cache lock, so other threads can
+     * load other images meanwhile.
+     * @param name the path including the file name
+     * @return the shared image
+     * @throws IOException when the image could not be loaded
+     */
+    public static BufferedImage getFromClasspath(String name) throws IOException {
+        String key = "classpath:" + name;
+        BufferedImage image = get(key);
+        
+        if (image == null) {
+            URL resource = GraphicObject.class.getClassLoader().getResource(name);
+            
+            if (resource == null)
+                throw new IOException("Resource not found: " + name);
+            
+            image = put(key, prepare(ImageIO.read(resource), name));
+        }
+        
+        return image;
+    }
+    
+    /**
+     * Returns the image from the file, decoding it only if it is not already
+     * cached or the file was modified since.
+     * 
+     * The image is decoded outside of the cache lock, so other threads can
+     * load other images meanwhile.
+     * @param file the file object
+     * @return the shared image
+     * @throws IOException when the image could not be loaded
+     */
+    public static BufferedImage getFromFile(File file) throws IOException {
+        String key = "file:" + file.getCanonicalPath() + "@" + file.lastModified();
+        BufferedImage image = get(key);
+        
+        if (image == null)
+            image = put(key, prepare(ImageIO.read(file), file.getPath()));
+        
+        return image;
+    }
+    
+    /**
+     * Enables or disables the conversion of newly decoded images to the
+     * format of the default screen.
+     * 
+     * Images in a compatible format can be drawn without slow conversions.
+     * The setting is ignored in a headless environment.
+     * @param enabled true to enable the conversion, false to disable it
+     */
+    public static void setConvertToCompatible(boolean enabled) {
+        convertToCompatible = enabled;
+    }
+    
+    /**
+     * Removes all images from the cache and resets the statistics.
+     */
+    public static synchronized void clear() {
+        images.clear();
+        hits = 0;
+        misses = 0;
+    }
+    
+    /**
+     * Returns the number of requests satisfied from the cache.
+     * @return the number of hits
+     */
+    public static synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Returns the number of requests which caused an image to be decoded.
+     * @return the number of misses
+     */
+    public static synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * Returns the number of images currently held in the cache.
+     * @return the number of images
+     */
+    public static synchronized int size() {
+        removeCollected();
+        return images.size();
+    }
+    
+    /**
+     * Looks up the image and updates the statistics.
+     * @param key the cache key
+     * @return the image or null if it is not cached
+     */
+    private static synchronized BufferedImage get(String key) {
+        Entry entry = images.get(key);
+        BufferedImage image = (entry != null) ? entry.get() : null;
+        
+        if (image != null)
+            hits++;
+        else
+            misses++;
+        
+        return image;
+    }
+    
+    /**
+     * Checks the decoded image and converts it if requested.
+     * @param image the decoded image
+     * @param name the name used in the error message
+     * @return the image ready to be cached
+     * @throws IOException if the image could not be decoded
+     */
+    private static BufferedImage prepare(BufferedImage image, String name) throws IOException {
+        if (image == null)
+            throw new IOException("Unsupported image format: " + name);
+        
+        if (convertToCompatible && !GraphicsEnvironment.isHeadless())
+            image = AcceleratedImage.toCompatible(image, GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration());
+        
+        return image;
+    }
+    
+    /**
+     * Stores the image unless another thread stored the same one meanwhile.
+     * @param key the cache key
+     * @param image the prepared image
+     * @return the stored image, which is shared by all callers
+     */
+    private static synchronized BufferedImage put(String key, BufferedImage image) {
+        Entry entry = images.get(key);
+        BufferedImage stored = (entry != null) ? entry.get() : null;
+        
+        if (stored != null)
+            return stored;
+        
+        removeCollected();
+        images.put(key, new Entry(key, image));
+        
+        return image;
+    }
+    
+    /**
+     * Removes the entries whose images were already garbage-collected.
+     * 
+     * Only the references cleared since the last call are visited.
+     */
+    private static void removeCollected() {
+        Reference<? extends BufferedImage> reference;
+        
+        while ((reference = collected.poll()) != null) {
+            Entry entry = (Entry) reference;
+            
+            // the key could have been reused by a newer entry
+            if (images.get(entry.key) == entry)
+                images.remove(entry.key);
+        }
+    }
+    
+    /**
+     * The soft reference to a cached image, remembering its key.
+     */
+    private static class Entry extends SoftReference<BufferedImage> {
+        private final String key;
+        
+        Entry(String key, BufferedImage image) {
+            super(image, collected);
+            this.key = key;
+        }
+    }
+}
@@ -26,8 +26,6 @@ package soga2d.objects;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import javax.imageio.ImageIO;
 import soga2d.GraphicObject;
 
 /**
@@ -108,38 +106,41 @@ public class Picture extends GraphicObject {
      * @throws IOException when the file could not be loaded
      */
     public void loadFromFile(File file) throws IOException {
-        beforeChange();
-        image = loadImageFromFile(file);
-        afterChange();
+        final BufferedImage loadedImage = loadImageFromFile(file);
+        
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                image = loadedImage;
+                afterChange();
+            }
+        });
     }
     
     /**
      * Helper method - loads the image from the classpath, e.g. from this JAR file.
+     * 
+     * The image is shared through the <code>ImageCache</code> and must not
+     * be modified.
      * @param name the path including the file name
      * @return the loaded image
      * @throws IOException when the image could not be loaded
      */
     public static BufferedImage loadImageFromClasspath(String name) throws IOException {
-        URL resource = GraphicObject.class.getClassLoader().getResource(name);
-        
-        if (resource != null)
-            return ImageIO.read(resource);
-        else 
-            throw new IOException();
+        return ImageCache.getFromClasspath(name);
     }
     
     /**
      * Helper method - loads the image from the specified file.
+     * 
+     * The image is shared through the <code>ImageCache</code> and must not
+     * be modified.
      * @param file the file object
      * @return the loaded image
      * @throws IOException when the image could not be loaded
      */
     public static BufferedImage loadImageFromFile(File file) throws IOException {
-        BufferedImage loadedImage = ImageIO.read(file);
-        
-        if (loadedImage != null)
-            return loadedImage;
-        else
-            throw new IOException();
+        return ImageCache.getFromFile(file);
     }
 }
@@ -29,6 +29,10 @@ import soga2d.GraphicObject;
 
 /**
  * The filled rectangle.
+ * 
+ * The rectangle is procedural - it is drawn directly on the board and its
+ * collisions are computed from the colors, so no image of its size needs to
+ * be allocated.
  * @author Matúš Sulír
  */
 public class Rectangle extends GraphicObject {
@@ -53,60 +57,150 @@ public class Rectangle extends GraphicObject {
         this.height = height;
         this.outline = outline;
         this.fill = fill;
-        
-        draw();
+    }
+    
+    /**
+     * Returns the rectangle width.
+     * @return the width
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    /**
+     * Returns the rectangle height.
+     * @return the height
+     */
+    @Override
+    public int getHeight() {
+        return height;
     }
     
     /**
      * Sets the rectangle width.
      * @param width the new width
      */
-    public void setWidth(int width) {
-        this.width = width;
-        draw();
+    public void setWidth(final int width) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                Rectangle.this.width = width;
+                afterChange();
+            }
+        });
     }
     
     /**
      * Sets the rectangle height.
      * @param height the new height
      */
-    public void setHeight(int height) {
-        this.height = height;
-        draw();
+    public void setHeight(final int height) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                Rectangle.this.height = height;
+                afterChange();
+            }
+        });
     }
     
     /**
      * Sets the outline color.
      * @param outline the new outline color
      */
-    public void setOutlineColor(Color outline) {
-        this.outline = outline;
-        draw();
+    public void setOutlineColor(final Color outline) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                Rectangle.this.outline = outline;
+                afterChange();
+            }
+        });
     }
     
     /**
      * Sets the fill color.
      * @param fill the new fill color
      */
-    public void setFill(Color fill) {
-        this.fill = fill;
-        draw();
+    public void setFill(final Color fill) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                Rectangle.this.fill = fill;
+                afterChange();
+            }
+        });
     }
     
     /**
-     * Draws the rectangle on the internal image.
+     * Returns true - the rectangle is drawn directly.
+     * @return true
      */
-    private void draw() {
-        beforeChange();
-        
-        createImage(width, height);
-        Graphics2D g = image.createGraphics();
+    @Override
+    protected boolean isProcedural() {
+        return true;
+    }
+    
+    /**
+     * Draws the rectangle.
+     * @param g the graphics to draw on
+     */
+    @Override
+    protected void paint(Graphics2D g) {
+        if (fill != null) {
+            g.setColor(fill);
+            g.fillRect(0, 0, width, height);
+        }
         
-        g.setColor(fill);
-        g.fillRect(0, 0, getWidth(), getHeight());
-        g.setColor(outline);
-        g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+        if (outline != null) {
+            g.setColor(outline);
+            g.drawRect(0, 0, width - 1, height - 1);
+        }
+    }
+    
+    /**
+     * Finds out whether the outline or fill color at the given point is not
+     * transparent.
+     * @param x the x coordinate relative to the rectangle
+     * @param y the y coordinate relative to the rectangle
+     * @return true if the pixel is opaque, false otherwise
+     */
+    @Override
+    protected boolean isOpaque(int x, int y) {
+        boolean border = (x == 0 || y == 0 || x == width - 1 || y == height - 1);
         
-        afterChange();
+        return isVisible(fill) || (border && isVisible(outline));
+    }
+    
+    /**
+     * Returns the end of the run of pixels with the same opacity - the whole
+     * row, unless only the outline is opaque.
+     * @param x the x coordinate of the first pixel of the run
+     * @param y the y coordinate of the row
+     * @param endX the x coordinate after the last pixel which is needed
+     * @return the x coordinate after the run
+     */
+    @Override
+    protected int getOpacityRunEnd(int x, int y, int endX) {
+        if (isVisible(fill) || !isVisible(outline) || y == 0 || y == height - 1)
+            return endX;
+        else if (x == 0 || x >= width - 1)
+            return x + 1;
+        else
+            return Math.min(width - 1, endX);
+    }
+    
+    /**
+     * Finds out whether the color is set and not fully transparent.
+     * @param color the color or null
+     * @return true if the color is visible, false otherwise
+     */
+    private static boolean isVisible(Color color) {
+        return color != null && color.getAlpha() != 0;
     }
 }
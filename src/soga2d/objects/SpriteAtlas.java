@@ -0,0 +1,374 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d.objects;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import soga2d.GraphicObject;
+
+/**
+ * The sprite atlas packs many small images into a few large sheets.
+ * 
+ * The images returned by the atlas are views (subimages) of the sheets, so
+ * they share the memory of the sheet and can be passed to a
+ * <code>Picture</code> or an <code>Animation</code> as any other image.
+ * 
+ * An atlas can be built at runtime by adding images and calling
+ * <code>pack()</code>, or saved and later loaded from an index file. Each
+ * line of the index file contains the following values separated by tabs:
+ * the sprite name, the sheet file name (relative to the index file), x, y,
+ * width and height. Empty lines and lines starting with # are ignored.
+ * @author Matúš Sulír
+ */
+public class SpriteAtlas {
+    private int sheetSize;
+    private Map<String, BufferedImage> pendingImages = new LinkedHashMap<String, BufferedImage>();
+    private List<BufferedImage> sheets = new ArrayList<BufferedImage>();
+    private Map<String, Region> regions = new LinkedHashMap<String, Region>();
+    
+    /**
+     * Constructs an empty atlas with sheets of at most 1024x1024 px.
+     */
+    public SpriteAtlas() {
+        this(1024);
+    }
+    
+    /**
+     * Constructs an empty atlas with a custom maximum sheet size.
+     * 
+     * Images larger than the sheet size are placed on their own sheets.
+     * @param sheetSize the maximum width and height of a sheet
+     */
+    public SpriteAtlas(int sheetSize) {
+        if (sheetSize <= 0)
+            throw new IllegalArgumentException("The sheet size must be positive");
+        
+        this.sheetSize = sheetSize;
+    }
+    
+    /**
+     * Adds an image to be packed.
+     * @param name the name used to get the image later
+     * @param image the image
+     */
+    public void add(String name, BufferedImage image) {
+        pendingImages.put(name, image);
+    }
+    
+    /**
+     * Adds an image from the classpath to be packed.
+     * 
+     * The path of the image is used as its name.
+     * @param name the path including the file name
+     * @throws IOException when the image could not be loaded
+     */
+    public void addFromClasspath(String name) throws IOException {
+        add(name, ImageCache.getFromClasspath(name));
+    }
+    
+    /**
+     * Packs all images added since the last call into new sheets.
+     */
+    public void pack() {
+        if (pendingImages.isEmpty())
+            return;
+        
+        List<String> names = new ArrayList<String>(pendingImages.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                return pendingImages.get(second).getHeight() - pendingImages.get(first).getHeight();
+            }
+        });
+        
+        int firstSheet = sheets.size();
+        List<Rectangle> sheetBounds = new ArrayList<Rectangle>();
+        Map<String, Region> placed = new HashMap<String, Region>();
+        Rectangle bounds = null;
+        int shelfX = 0;
+        int shelfY = 0;
+        int shelfHeight = 0;
+        
+        for (String name : names) {
+            BufferedImage image = pendingImages.get(name);
+            int width = image.getWidth();
+            int height = image.getHeight();
+            
+            if (bounds != null && shelfX + width > sheetSize) {
+                shelfX = 0;
+                shelfY += shelfHeight;
+                shelfHeight = 0;
+            }
+            
+            if (bounds == null || shelfY + height > sheetSize || shelfX + width > sheetSize) {
+                bounds = new Rectangle();
+                sheetBounds.add(bounds);
+                shelfX = 0;
+                shelfY = 0;
+                shelfHeight = 0;
+            }
+            
+            placed.put(name, new Region(firstSheet + sheetBounds.size() - 1, shelfX, shelfY, width, height));
+            bounds.add(new Rectangle(shelfX, shelfY, width, height));
+            shelfX += width;
+            shelfHeight = Math.max(shelfHeight, height);
+        }
+        
+        for (Rectangle sheet : sheetBounds)
+            sheets.add(new BufferedImage(Math.max(sheet.width, 1), Math.max(sheet.height, 1), BufferedImage.TYPE_INT_ARGB));
+        
+        for (String name : pendingImages.keySet()) {
+            Region region = placed.get(name);
+            Graphics2D g = sheets.get(region.sheet).createGraphics();
+            
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(pendingImages.get(name), region.x, region.y, null);
+            g.dispose();
+            
+            addRegion(name, region);
+        }
+        
+        pendingImages.clear();
+    }
+    
+    /**
+     * Returns the packed image.
+     * 
+     * If there are any images not packed yet, they are packed first.
+     * @param name the image name
+     * @return the subimage of a sheet or null if there is no such image
+     */
+    public BufferedImage getImage(String name) {
+        pack();
+        
+        Region region = regions.get(name);
+        return (region != null) ? region.image : null;
+    }
+    
+    /**
+     * Returns the names of all images in the atlas.
+     * @return the list of names
+     */
+    public List<String> getNames() {
+        pack();
+        
+        return new ArrayList<String>(regions.keySet());
+    }
+    
+    /**
+     * Returns the number of sheets.
+     * @return the number of sheets
+     */
+    public int getSheetCount() {
+        pack();
+        
+        return sheets.size();
+    }
+    
+    /**
+     * Saves the sheets as PNG files and writes the index file.
+     * 
+     * The sheets are named <code>baseName-0.png</code>,
+     * <code>baseName-1.png</code>, etc. and the index file is named
+     * <code>baseName.atlas</code>.
+     * @param directory the target directory
+     * @param baseName the base file name
+     * @throws IOException when a file could not be written
+     */
+    public void save(File directory, String baseName) throws IOException {
+        pack();
+        
+        for (int i = 0; i < sheets.size(); i++)
+            ImageIO.write(sheets.get(i), "png", new File(directory, baseName + "-" + i + ".png"));
+        
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, baseName + ".atlas")), "UTF-8");
+        
+        try {
+            for (Map.Entry<String, Region> entry : regions.entrySet()) {
+                Region region = entry.getValue();
+                
+                writer.write(entry.getKey() + "\t" + baseName + "-" + region.sheet + ".png\t"
+                        + region.x + "\t" + region.y + "\t" + region.width + "\t" + region.height + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+    
+    /**
+     * Loads a prebuilt atlas from the classpath.
+     * @param indexName the path of the index file
+     * @return the atlas
+     * @throws IOException when the index or a sheet could not be loaded
+     */
+    public static SpriteAtlas loadFromClasspath(String indexName) throws IOException {
+        InputStream input = GraphicObject.class.getClassLoader().getResourceAsStream(indexName);
+        
+        if (input == null)
+            throw new IOException("Resource not found: " + indexName);
+        
+        int slash = indexName.lastIndexOf('/');
+        String prefix = (slash == -1) ? "" : indexName.substring(0, slash + 1);
+        
+        SpriteAtlas atlas = new SpriteAtlas();
+        Map<String, Integer> sheetNumbers = new HashMap<String, Integer>();
+        
+        for (String[] fields : readIndex(input, indexName)) {
+            Integer sheet = sheetNumbers.get(fields[1]);
+            
+            if (sheet == null) {
+                sheet = atlas.sheets.size();
+                atlas.sheets.add(ImageCache.getFromClasspath(prefix + fields[1]));
+                sheetNumbers.put(fields[1], sheet);
+            }
+            
+            atlas.addRegion(fields[0], parseRegion(sheet, fields, indexName));
+        }
+        
+        return atlas;
+    }
+    
+    /**
+     * Loads a prebuilt atlas from a file.
+     * @param indexFile the index file
+     * @return the atlas
+     * @throws IOException when the index or a sheet could not be loaded
+     */
+    public static SpriteAtlas loadFromFile(File indexFile) throws IOException {
+        SpriteAtlas atlas = new SpriteAtlas();
+        Map<String, Integer> sheetNumbers = new HashMap<String, Integer>();
+        
+        for (String[] fields : readIndex(new FileInputStream(indexFile), indexFile.getPath())) {
+            Integer sheet = sheetNumbers.get(fields[1]);
+            
+            if (sheet == null) {
+                sheet = atlas.sheets.size();
+                atlas.sheets.add(ImageCache.getFromFile(new File(indexFile.getParentFile(), fields[1])));
+                sheetNumbers.put(fields[1], sheet);
+            }
+            
+            atlas.addRegion(fields[0], parseRegion(sheet, fields, indexFile.getPath()));
+        }
+        
+        return atlas;
+    }
+    
+    /**
+     * Creates the subimage for the region and registers it.
+     * @param name the image name
+     * @param region the region of a sheet
+     */
+    private void addRegion(String name, Region region) {
+        region.image = sheets.get(region.sheet).getSubimage(region.x, region.y, region.width, region.height);
+        regions.put(name, region);
+    }
+    
+    /**
+     * Reads all non-empty, non-comment lines of the index and closes it.
+     * @param input the index stream
+     * @param name the index name used in error messages
+     * @return the list of lines split into fields
+     * @throws IOException when the index could not be read or is malformed
+     */
+    private static List<String[]> readIndex(InputStream input, String name) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        
+        try {
+            String line;
+            
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#"))
+                    continue;
+                
+                String[] fields = line.split("\t");
+                
+                if (fields.length != 6)
+                    throw new IOException("Malformed atlas index line in " + name + ": " + line);
+                
+                lines.add(fields);
+            }
+        } finally {
+            reader.close();
+        }
+        
+        return lines;
+    }
+    
+    /**
+     * Parses the coordinates of an index line.
+     * @param sheet the sheet number
+     * @param fields the fields of the line
+     * @param name the index name used in error messages
+     * @return the region
+     * @throws IOException when the numbers are malformed
+     */
+    private static Region parseRegion(int sheet, String[] fields, String name) throws IOException {
+        try {
+            return new Region(sheet, Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                    Integer.parseInt(fields[4]), Integer.parseInt(fields[5]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed atlas index in " + name + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * The location of one image in a sheet.
+     */
+    private static class Region {
+        private int sheet;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+        private BufferedImage image;
+        
+        Region(int sheet, int x, int y, int width, int height) {
+            this.sheet = sheet;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -23,6 +23,7 @@
  */
 package soga2d.objects;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
@@ -33,12 +34,18 @@ import soga2d.GraphicObject;
 
 /**
  * The graphical object containing a textual string.
+ * 
+ * The font metrics are cached and the image is reused if the size of the
+ * text does not change. With the raster caching enabled, equal texts share
+ * one rendered image.
  * @author Matúš Sulír
  */
 public class Text extends GraphicObject {
     private String text;
     private Font font;
     private Color color;
+    private boolean rasterCaching = false;
+    private boolean ownImage = false;
     
     /**
      * Constructs and empty text.
@@ -82,7 +89,6 @@ public class Text extends GraphicObject {
         this.font = font;
         this.color = color;
         
-        createImageToFit();
         updateImage();
     }
     
@@ -98,75 +104,127 @@ public class Text extends GraphicObject {
      * Sets a new text to display.
      * @param text the new text
      */
-    public void setText(String text) {
-        this.text = text;
-        
-        updateImage();
+    public void setText(final String text) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                if (text.equals(Text.this.text))
+                    return;
+                
+                Text.this.text = text;
+                updateImage();
+            }
+        });
     }
     
     /**
      * Sets the font used when drawing the text.
      * @param font the new font
      */
-    public void setFont(Font font) {
-        this.font = font;
-        
-        updateImage();
+    public void setFont(final Font font) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                Text.this.font = font;
+                updateImage();
+            }
+        });
     }
     
     /**
      * Sets the text foreground color.
      * @param color the new color
      */
-    public void setColor(Color color) {
-        this.color = color;
-        
-        updateImage();
+    public void setColor(final Color color) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                Text.this.color = color;
+                updateImage();
+            }
+        });
+    }
+    
+    /**
+     * Enables or disables sharing of the rendered text between all text
+     * objects with the raster caching enabled.
+     * 
+     * When enabled, a string which was already rendered with the same font
+     * and color is not rendered again. This is useful e.g. for frequently
+     * changing counters.
+     * @param enabled true to share the rendered texts, false to render each
+     * text separately
+     */
+    public void setRasterCaching(boolean enabled) {
+        rasterCaching = enabled;
     }
     
     /**
-     * Creates an appropriate image, draws the text on it and updates the
-     * graphic object.
+     * Finds or creates an appropriate image, draws the text on it and
+     * updates the graphic object.
+     * 
+     * This is called only inside a change (or the constructor), so the
+     * text, font and color cannot be modified meanwhile.
      */
     private void updateImage() {
         beforeChange();
-        createImageToFit();
+        BufferedImage cached = rasterCaching ? TextCache.getRaster(text, font, color) : null;
         
-        Graphics2D g = image.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.setFont(font);
-        g.setColor(color);
-        
-        int lineHeigth = g.getFontMetrics().getHeight();
-        int top = lineHeigth;
-        
-        for (String line : text.split("\n")) {
-            g.drawString(line, 0, top);
-            top += lineHeigth;
+        if (cached != null) {
+            image = cached;
+            ownImage = false;
+        } else {
+            render();
+            
+            if (rasterCaching) {
+                TextCache.putRaster(text, font, color, image);
+                ownImage = false;
+            }
         }
         
         afterChange();
     }
     
     /**
-     * Computes the width and height of the image necessary to display the text
-     * and creates it.
+     * Computes the width and height of the image necessary to display the
+     * text, creates it (or clears the current one if it has the same size)
+     * and draws the text.
      */
-    private void createImageToFit() {
-        Graphics2D test = new BufferedImage(1, 1, image.getType()).createGraphics();
-        FontMetrics metrics = test.getFontMetrics(font);
+    private void render() {
+        FontMetrics metrics = TextCache.getMetrics(font);
+        String[] lines = text.split("\n");
         
         int lineHeight = metrics.getHeight();
-        int totalWidth = 0;
-        int totalHeight = 0;
+        int width = 1;
+        int height = Math.max(lines.length * lineHeight + metrics.getDescent(), 1);
         
-        for (String line : text.split("\n")) {
-            int lineWidth = metrics.stringWidth(line);
-            
-            totalWidth = Math.max(totalWidth, lineWidth);
-            totalHeight += lineHeight;
+        for (String line : lines)
+            width = Math.max(width, metrics.stringWidth(line));
+        
+        Graphics2D g;
+        
+        if (ownImage && image.getWidth() == width && image.getHeight() == height) {
+            g = image.createGraphics();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, width, height);
+            g.setComposite(AlphaComposite.SrcOver);
+        } else {
+            createImage(width, height);
+            ownImage = true;
+            g = image.createGraphics();
+        }
+        
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(color);
+        
+        int top = lineHeight;
+        
+        for (String line : lines) {
+            g.drawString(line, 0, top);
+            top += lineHeight;
         }
         
-        createImage(totalWidth, totalHeight + metrics.getDescent());
+        g.dispose();
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d.objects;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The shared caches used by text objects.
+ * 
+ * Font metrics are cached per font, so measuring a text does not need a
+ * new graphics context. Rendered texts are cached by the string, font and
+ * color; when their total size exceeds the limit, the least recently used
+ * ones are evicted.
+ * @author Matúš Sulír
+ */
+class TextCache {
+    private static final int MAX_FONTS = 32;
+    private static final long MAX_PIXELS = 1024 * 1024;
+    private static final Map<Font, FontMetrics> metrics = new LinkedHashMap<Font, FontMetrics>(16, 0.75f, true);
+    private static final Map<Key, BufferedImage> rasters = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+    private static long pixels = 0;
+    
+    /**
+     * This class contains only static methods.
+     */
+    private TextCache() { }
+    
+    /**
+     * Returns the metrics of the font.
+     * @param font the font
+     * @return the font metrics
+     */
+    static synchronized FontMetrics getMetrics(Font font) {
+        FontMetrics fontMetrics = metrics.get(font);
+        
+        if (fontMetrics == null) {
+            Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+            fontMetrics = g.getFontMetrics(font);
+            g.dispose();
+            
+            metrics.put(font, fontMetrics);
+            
+            if (metrics.size() > MAX_FONTS)
+                metrics.remove(metrics.keySet().iterator().next());
+        }
+        
+        return fontMetrics;
+    }
+    
+    /**
+     * Returns a previously rendered text.
+     * 
+     * The returned image is shared and must not be modified.
+     * @param text the string
+     * @param font the font
+     * @param color the foreground color
+     * @return the image or null if it is not cached
+     */
+    static synchronized BufferedImage getRaster(String text, Font font, Color color) {
+        return rasters.get(new Key(text, font, color));
+    }
+    
+    /**
+     * Stores a rendered text.
+     * @param text the string
+     * @param font the font
+     * @param color the foreground color
+     * @param raster the image which will not be modified anymore
+     */
+    static synchronized void putRaster(String text, Font font, Color color, BufferedImage raster) {
+        BufferedImage previous = rasters.put(new Key(text, font, color), raster);
+        
+        if (previous != null)
+            pixels -= size(previous);
+        
+        pixels += size(raster);
+        evict();
+    }
+    
+    /**
+     * Removes the least recently used images until the cache fits the limit.
+     */
+    private static void evict() {
+        Iterator<BufferedImage> it = rasters.values().iterator();
+        
+        while (pixels > MAX_PIXELS && it.hasNext()) {
+            pixels -= size(it.next());
+            it.remove();
+        }
+    }
+    
+    /**
+     * Returns the number of pixels of the image.
+     * @param image the image
+     * @return the width multiplied by the height
+     */
+    private static long size(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+    
+    /**
+     * The cache key - a string, font and color.
+     */
+    private static class Key {
+        private String text;
+        private Font font;
+        private Color color;
+        
+        Key(String text, Font font, Color color) {
+            this.text = text;
+            this.font = font;
+            this.color = color;
+        }
+        
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key))
+                return false;
+            
+            Key other = (Key) object;
+            return text.equals(other.text) && font.equals(other.font) && color.equals(other.color);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * (31 * text.hashCode() + font.hashCode()) + color.hashCode();
+        }
+    }
+}
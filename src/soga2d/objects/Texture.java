@@ -33,16 +33,29 @@ import soga2d.GraphicObject;
 
 /**
  * The image repeated horizontally and vertically to fill the given area.
+ * 
+ * Only the tile image is stored. The texture is procedural - the visible
+ * part of the area is filled with the tile when the board is painted and
+ * collisions use the tile pixel at the corresponding position.
  * @author Matúš Sulír
  */
 public class Texture extends GraphicObject {
+    private int width;
+    private int height;
+    private BufferedImage tile;
+    private TexturePaint texturePaint;
+    private boolean[] tileOpacity;
+    
     /**
      * Constructs an empty (transparent) texture.
      * @param width the width of the area to fill
      * @param height the height of the area to fill
      */
     public Texture(int width, int height) {
-        super(0, 0, width, height);
+        super(0, 0);
+        
+        this.width = width;
+        this.height = height;
     }
     
     /**
@@ -54,7 +67,7 @@ public class Texture extends GraphicObject {
      * @throws IOException if the image can not be loaded
      */
     public Texture(String fileName, int width, int height) throws IOException {
-        super(0, 0, width, height);
+        this(width, height);
         
         fill(Picture.loadImageFromClasspath(fileName));
     }
@@ -67,7 +80,7 @@ public class Texture extends GraphicObject {
      * @throws IOException when the image can not be loaded
      */
     public Texture(File file, int width, int height) throws IOException {
-        super(0, 0, width, height);
+        this(width, height);
         
         fill(Picture.loadImageFromFile(file));
     }
@@ -79,11 +92,29 @@ public class Texture extends GraphicObject {
      * @param height the height of the area to fill
      */
     public Texture(BufferedImage image, int width, int height) {
-        super(0, 0, width, height);
+        this(width, height);
         
         fill(image);
     }
     
+    /**
+     * Returns the width of the filled area.
+     * @return the width
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    /**
+     * Returns the height of the filled area.
+     * @return the height
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
     /**
      * Loads the texture from a file.
      * @param file the input file.
@@ -94,19 +125,74 @@ public class Texture extends GraphicObject {
     }
     
     /**
-     * Fills the internal image with the specified texture image and does
-     * the needed updates.
-     * @param textureImage the texture image
+     * Returns true - the texture is drawn directly.
+     * @return true
+     */
+    @Override
+    protected boolean isProcedural() {
+        return true;
+    }
+    
+    /**
+     * Fills the area (limited by the clip of the graphics) with the tile.
+     * @param g the graphics to draw on
      */
-    private void fill(BufferedImage textureImage) {
-        beforeChange();
+    @Override
+    protected void paint(Graphics2D g) {
+        if (texturePaint != null) {
+            g.setPaint(texturePaint);
+            g.fillRect(0, 0, width, height);
+        }
+    }
+    
+    /**
+     * Finds out whether the tile pixel at the given point is not transparent.
+     * @param x the x coordinate relative to the texture
+     * @param y the y coordinate relative to the texture
+     * @return true if the pixel is opaque, false otherwise
+     */
+    @Override
+    protected boolean isOpaque(int x, int y) {
+        if (tile == null)
+            return false;
         
-        TexturePaint texturePaint = new TexturePaint(textureImage, new Rectangle(textureImage.getWidth(), textureImage.getHeight()));
-        Graphics2D g = this.image.createGraphics();
+        int tileWidth = tile.getWidth();
+        return tileOpacity[(y % tile.getHeight()) * tileWidth + x % tileWidth];
+    }
+    
+    /**
+     * Replaces the tile image and does the needed updates.
+     * @param textureImage the texture image
+     */
+    private void fill(final BufferedImage textureImage) {
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                beforeChange();
+                
+                tile = textureImage;
+                texturePaint = new TexturePaint(textureImage, new Rectangle(textureImage.getWidth(), textureImage.getHeight()));
+                tileOpacity = computeOpacity(textureImage);
+                
+                afterChange();
+            }
+        });
+    }
+    
+    /**
+     * Finds out which pixels of the image are not fully transparent.
+     * @param image the image
+     * @return the array of flags, row by row
+     */
+    private static boolean[] computeOpacity(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        boolean[] opacity = new boolean[pixels.length];
         
-        g.setPaint(texturePaint);
-        g.fill(new Rectangle(getWidth(), getHeight()));
+        for (int i = 0; i < pixels.length; i++)
+            opacity[i] = (pixels[i] >>> 24) != 0;
         
-        afterChange();
+        return opacity;
     }
 }
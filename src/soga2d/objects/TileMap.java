@@ -0,0 +1,446 @@
+/*
+ * Soga2D
+ *
+ * Copyright 2011 Matúš Sulír.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package soga2d.objects;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import soga2d.GraphicObject;
+
+/**
+ * The grid of tiles forming e.g. a level of a game.
+ * 
+ * The whole map is one graphic object. Tiles are stored as indices into a
+ * tileset (an array of equally sized images, which can be shared by many
+ * maps) and only the tiles in the repainted area are drawn. Optionally,
+ * chunks of 16x16 tiles can be prerendered and cached.
+ * 
+ * Collisions with the map can be tested in constant time per tile using
+ * the solid flags of the tiles. The pixel-accurate
+ * <code>collidesWith()</code> method works too; it tests only the pixels
+ * where the map overlaps the other object and skips empty tiles at once.
+ * @author Matúš Sulír
+ */
+public class TileMap extends GraphicObject {
+    /**
+     * The index of an empty (transparent) tile.
+     */
+    public static final int EMPTY = -1;
+    
+    private static final int CHUNK_TILES = 16;
+    private static final int MAX_CHUNKS = 64;
+    
+    private BufferedImage[] tileset;
+    private boolean[] solid;
+    private int tileWidth;
+    private int tileHeight;
+    private int columns;
+    private int rows;
+    private int[] tiles;
+    private boolean chunkCaching = false;
+    private final Map<Integer, BufferedImage> chunks = new LinkedHashMap<Integer, BufferedImage>(16, 0.75f, true);
+    
+    /**
+     * Constructs an empty tile map.
+     * @param tileset the tile images, all of the given size (not copied)
+     * @param tileWidth the tile width
+     * @param tileHeight the tile height
+     * @param columns the number of columns
+     * @param rows the number of rows
+     */
+    public TileMap(BufferedImage[] tileset, int tileWidth, int tileHeight, int columns, int rows) {
+        super(0, 0);
+        
+        if (tileWidth <= 0 || tileHeight <= 0 || columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("The tile size and the map size must be positive");
+        
+        this.tileset = tileset;
+        this.solid = new boolean[tileset.length];
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.tiles = new int[columns * rows];
+        
+        Arrays.fill(tiles, EMPTY);
+    }
+    
+    /**
+     * Cuts a tileset image into tiles, row by row.
+     * 
+     * The tiles share the pixels with the original image.
+     * @param sheet the image containing the tiles in a grid
+     * @param tileWidth the tile width
+     * @param tileHeight the tile height
+     * @return the array of tiles
+     */
+    public static BufferedImage[] sliceTileset(BufferedImage sheet, int tileWidth, int tileHeight) {
+        int sheetColumns = sheet.getWidth() / tileWidth;
+        int sheetRows = sheet.getHeight() / tileHeight;
+        BufferedImage[] result = new BufferedImage[sheetColumns * sheetRows];
+        
+        for (int row = 0; row < sheetRows; row++) {
+            for (int column = 0; column < sheetColumns; column++)
+                result[row * sheetColumns + column] = sheet.getSubimage(column * tileWidth, row * tileHeight, tileWidth, tileHeight);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Returns the width of the whole map.
+     * @return the width
+     */
+    @Override
+    public int getWidth() {
+        return columns * tileWidth;
+    }
+    
+    /**
+     * Returns the height of the whole map.
+     * @return the height
+     */
+    @Override
+    public int getHeight() {
+        return rows * tileHeight;
+    }
+    
+    /**
+     * Returns the number of columns.
+     * @return the column count
+     */
+    public int getColumns() {
+        return columns;
+    }
+    
+    /**
+     * Returns the number of rows.
+     * @return the row count
+     */
+    public int getRows() {
+        return rows;
+    }
+    
+    /**
+     * Returns the tile at the given position in the grid.
+     * @param column the column
+     * @param row the row
+     * @return the tile index or <code>EMPTY</code> if the position is outside
+     * the map
+     */
+    public int getTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows)
+            return EMPTY;
+        
+        return tiles[row * columns + column];
+    }
+    
+    /**
+     * Sets the tile at the given position in the grid and repaints it.
+     * @param column the column
+     * @param row the row
+     * @param tile the tile index or <code>EMPTY</code>
+     * @throws IllegalArgumentException if the position is outside the map or
+     * the tile is not in the tileset
+     */
+    public void setTile(final int column, final int row, final int tile) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows)
+            throw new IllegalArgumentException("The position [" + column + ", " + row + "] is outside the map");
+        
+        checkTile(tile);
+        
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                tiles[row * columns + column] = tile;
+                invalidateChunk(column / CHUNK_TILES, row / CHUNK_TILES);
+                
+                afterChange(new Rectangle(column * tileWidth, row * tileHeight, tileWidth, tileHeight));
+            }
+        });
+    }
+    
+    /**
+     * Sets all tiles at once.
+     * @param newTiles the tile indices, row by row (copied)
+     * @throws IllegalArgumentException if the number of tiles does not match
+     * the map size or some tile is not in the tileset
+     */
+    public void setTiles(int[] newTiles) {
+        if (newTiles.length != columns * rows)
+            throw new IllegalArgumentException("The number of tiles must be " + columns * rows);
+        
+        final int[] copy = newTiles.clone();
+        
+        for (int tile : copy)
+            checkTile(tile);
+        
+        invokeChange(new Runnable() {
+            @Override
+            public void run() {
+                tiles = copy;
+                
+                synchronized (chunks) {
+                    chunks.clear();
+                }
+                
+                afterChange(new Rectangle(getWidth(), getHeight()));
+            }
+        });
+    }
+    
+    /**
+     * Returns the tile at the given point of the board.
+     * @param x the x coordinate on the board
+     * @param y the y coordinate on the board
+     * @return the tile index or <code>EMPTY</code> if the point is outside
+     * the map
+     */
+    public int getTileAt(int x, int y) {
+        return getTile(floorDiv(x - this.x, tileWidth), floorDiv(y - this.y, tileHeight));
+    }
+    
+    /**
+     * Marks a tile of the tileset as solid (e.g. a wall) or not.
+     * @param tile the tile index
+     * @param solid true if the tile is solid, false otherwise
+     */
+    public void setSolid(int tile, boolean solid) {
+        this.solid[tile] = solid;
+    }
+    
+    /**
+     * Finds out whether the tile at the given point of the board is solid.
+     * @param x the x coordinate on the board
+     * @param y the y coordinate on the board
+     * @return true if there is a solid tile, false otherwise
+     */
+    public boolean isSolidAt(int x, int y) {
+        int tile = getTileAt(x, y);
+        
+        return tile != EMPTY && solid[tile];
+    }
+    
+    /**
+     * Finds out whether the rectangle of the object overlaps any solid tile.
+     * 
+     * Only the tiles under the object are checked.
+     * @param object the graphic object
+     * @return true if the object touches a solid tile, false otherwise
+     */
+    public boolean overlapsSolidTile(GraphicObject object) {
+        int firstColumn = Math.max(floorDiv(object.getX() - x, tileWidth), 0);
+        int lastColumn = Math.min(floorDiv(object.getX() + object.getWidth() - 1 - x, tileWidth), columns - 1);
+        int firstRow = Math.max(floorDiv(object.getY() - y, tileHeight), 0);
+        int lastRow = Math.min(floorDiv(object.getY() + object.getHeight() - 1 - y, tileHeight), rows - 1);
+        
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int tile = tiles[row * columns + column];
+                
+                if (tile != EMPTY && solid[tile])
+                    return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Enables or disables caching of prerendered chunks of 16x16 tiles.
+     * 
+     * This speeds up drawing of maps containing many small tiles, at the
+     * cost of memory for the recently drawn chunks.
+     * @param enabled true to cache the chunks, false to draw each tile
+     */
+    public void setChunkCaching(boolean enabled) {
+        chunkCaching = enabled;
+        
+        synchronized (chunks) {
+            chunks.clear();
+        }
+    }
+    
+    /**
+     * Returns true - the map is drawn directly.
+     * @return true
+     */
+    @Override
+    protected boolean isProcedural() {
+        return true;
+    }
+    
+    /**
+     * Draws the tiles (or chunks) intersecting the clip of the graphics.
+     * @param g the graphics to draw on
+     */
+    @Override
+    protected void paint(Graphics2D g) {
+        Rectangle clip = g.getClipBounds();
+        
+        if (clip == null)
+            clip = new Rectangle(getWidth(), getHeight());
+        
+        int cellWidth = chunkCaching ? tileWidth * CHUNK_TILES : tileWidth;
+        int cellHeight = chunkCaching ? tileHeight * CHUNK_TILES : tileHeight;
+        int cellColumns = chunkCaching ? (columns + CHUNK_TILES - 1) / CHUNK_TILES : columns;
+        int cellRows = chunkCaching ? (rows + CHUNK_TILES - 1) / CHUNK_TILES : rows;
+        
+        int firstColumn = Math.max(floorDiv(clip.x, cellWidth), 0);
+        int lastColumn = Math.min(floorDiv(clip.x + clip.width - 1, cellWidth), cellColumns - 1);
+        int firstRow = Math.max(floorDiv(clip.y, cellHeight), 0);
+        int lastRow = Math.min(floorDiv(clip.y + clip.height - 1, cellHeight), cellRows - 1);
+        
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (chunkCaching) {
+                    g.drawImage(getChunk(column, row), column * cellWidth, row * cellHeight, null);
+                } else {
+                    int tile = tiles[row * columns + column];
+                    
+                    if (tile != EMPTY)
+                        g.drawImage(tileset[tile], column * tileWidth, row * tileHeight, null);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds out whether the tile pixel at the given point is not transparent.
+     * @param x the x coordinate relative to the map
+     * @param y the y coordinate relative to the map
+     * @return true if the pixel is opaque, false otherwise
+     */
+    @Override
+    protected boolean isOpaque(int x, int y) {
+        int tile = tiles[(y / tileHeight) * columns + x / tileWidth];
+        
+        return tile != EMPTY && (tileset[tile].getRGB(x % tileWidth, y % tileHeight) >>> 24) != 0;
+    }
+    
+    /**
+     * Returns the end of the run of pixels with the same opacity - the end of
+     * an empty tile, or the next pixel otherwise.
+     * @param x the x coordinate of the first pixel of the run
+     * @param y the y coordinate of the row
+     * @param endX the x coordinate after the last pixel which is needed
+     * @return the x coordinate after the run
+     */
+    @Override
+    protected int getOpacityRunEnd(int x, int y, int endX) {
+        int column = x / tileWidth;
+        
+        if (tiles[(y / tileHeight) * columns + column] != EMPTY)
+            return x + 1;
+        
+        return Math.min((column + 1) * tileWidth, endX);
+    }
+    
+    /**
+     * Makes sure the tile index refers to the tileset or is empty.
+     * @param tile the tile index
+     */
+    private void checkTile(int tile) {
+        if (tile != EMPTY && (tile < 0 || tile >= tileset.length))
+            throw new IllegalArgumentException("Tile " + tile + " is not in the tileset");
+    }
+    
+    /**
+     * Divides and rounds the result down, also for negative numbers.
+     * @param dividend the dividend
+     * @param divisor the positive divisor
+     * @return the floor of the quotient
+     */
+    private static int floorDiv(int dividend, int divisor) {
+        int quotient = dividend / divisor;
+        
+        return (dividend % divisor < 0) ? quotient - 1 : quotient;
+    }
+    
+    /**
+     * Returns the prerendered chunk, rendering it if it is not cached.
+     * @param chunkColumn the column of the chunk
+     * @param chunkRow the row of the chunk
+     * @return the chunk image
+     */
+    private BufferedImage getChunk(int chunkColumn, int chunkRow) {
+        Integer key = chunkRow * ((columns + CHUNK_TILES - 1) / CHUNK_TILES) + chunkColumn;
+        
+        synchronized (chunks) {
+            BufferedImage chunk = chunks.get(key);
+            
+            if (chunk == null) {
+                chunk = renderChunk(chunkColumn, chunkRow);
+                chunks.put(key, chunk);
+                
+                if (chunks.size() > MAX_CHUNKS)
+                    chunks.remove(chunks.keySet().iterator().next());
+            }
+            
+            return chunk;
+        }
+    }
+    
+    /**
+     * Draws all tiles of the chunk into a new image.
+     * @param chunkColumn the column of the chunk
+     * @param chunkRow the row of the chunk
+     * @return the chunk image
+     */
+    private BufferedImage renderChunk(int chunkColumn, int chunkRow) {
+        int firstColumn = chunkColumn * CHUNK_TILES;
+        int firstRow = chunkRow * CHUNK_TILES;
+        int chunkColumns = Math.min(CHUNK_TILES, columns - firstColumn);
+        int chunkRows = Math.min(CHUNK_TILES, rows - firstRow);
+        
+        BufferedImage chunk = new BufferedImage(chunkColumns * tileWidth, chunkRows * tileHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = chunk.createGraphics();
+        
+        for (int row = 0; row < chunkRows; row++) {
+            for (int column = 0; column < chunkColumns; column++) {
+                int tile = tiles[(firstRow + row) * columns + firstColumn + column];
+                
+                if (tile != EMPTY)
+                    g.drawImage(tileset[tile], column * tileWidth, row * tileHeight, null);
+            }
+        }
+        
+        g.dispose();
+        return chunk;
+    }
+    
+    /**
+     * Removes the chunk from the cache after one of its tiles changed.
+     * @param chunkColumn the column of the chunk
+     * @param chunkRow the row of the chunk
+     */
+    private void invalidateChunk(int chunkColumn, int chunkRow) {
+        synchronized (chunks) {
+            chunks.remove(chunkRow * ((columns + CHUNK_TILES - 1) / CHUNK_TILES) + chunkColumn);
+        }
+    }
+}